@@ -0,0 +1,100 @@
+package ch.wiss.m335_lb;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * instrumented tests for the sqlite store, it has to give the same answers as the {@link ModuleLog}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SqliteModuleStoreTest {
+
+    private static final String DATABASE_NAME = "modules-test.db";
+
+    private Context context;
+    private SqliteModuleStore database;
+    private ModuleLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new SqliteModuleStore(context, DATABASE_NAME);
+        log = new ModuleLog(Files.createTempDirectory("modulelog").toFile());
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        log.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void queries_matchModuleLog() {
+        List<Module> modules = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            Double note1 = id % 5 == 0 ? null : 1.0 + id % 11 * 0.5;
+            Double note2 = id % 7 == 0 ? null : 6.0 - id % 9 * 0.5;
+            modules.add(new Module(id, "M" + (100 + id * 7 % 60), "Modul " + (id % 3 == 0 ? "Datenbanken " : "") + id,
+                    note1, note2));
+        }
+        assertTrue(database.upsertAll(modules));
+        assertTrue(log.upsertAll(modules));
+        database.delete(12L);
+        log.delete(12L);
+
+        assertEquals(log.getAll(), database.getAll());
+        assertEquals(log.getOverallAverage(), database.getOverallAverage(), 1e-9);
+        assertEquals(log.getGradedCount(), database.getGradedCount());
+        assertEquals(log.getMaxId(), database.getMaxId());
+        assertEquals(log.getStatistics().getMedian(), database.getStatistics().getMedian(), 1e-9);
+
+        for (ModuleSortIndex.SortOrder order : ModuleSortIndex.SortOrder.values()) {
+            ModuleListQuery query = ModuleListQuery.ALL.withSortOrder(order, order == ModuleSortIndex.SortOrder.AVERAGE);
+            assertArrayEquals(order.name(), log.query(query).ids(), database.query(query).ids());
+        }
+        ModuleListQuery search = ModuleListQuery.ALL.withSearchText("daten").withGradeRange(3.0, 5.0);
+        assertArrayEquals(log.query(search).ids(), database.query(search).ids());
+    }
+
+    @Test
+    public void replaceAll_keepsOrderOfTheList() {
+        List<Module> modules = List.of(
+                new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0),
+                new Module(2L, "m346", "Cloud-Lösungen", null, null),
+                new Module(3L, "m164", "Datenbanken", 5.5, 6.0));
+        assertTrue(database.resetTo(modules));
+
+        List<Module> reordered = List.of(modules.get(2), modules.get(0));
+        assertTrue(database.replaceAll(reordered));
+        assertEquals(reordered, database.getAll());
+        assertNull(database.findById(2L));
+    }
+
+    @Test
+    public void migrate_copiesLogIntoDatabase() {
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0));
+        log.upsert(new Module(2L, "m346", "Cloud-Lösungen", null, null));
+        database.upsert(new Module(9L, "m164", "Datenbanken", null, null));
+        List<Module> expected = log.getAll();
+
+        assertSame(database, ModuleRepository.migrate(log, database));
+        assertEquals(expected, database.getAll());
+    }
+}
@@ -1,8 +1,8 @@
 package ch.wiss.m335_lb;
 
 import android.os.Bundle;
-import android.text.TextUtils;
 import android.widget.Button;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -10,8 +10,6 @@ import androidx.appcompat.widget.Toolbar;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
-import java.util.List;
-
 /**
  * Activity for adding new modules or editing existing ones.
  * Provides form validation and data persistence functionality.
@@ -32,7 +30,7 @@ public class AddEditModuleActivity extends AppCompatActivity {
     private Button buttonCancel;
     private Toolbar toolbar;
     
-    private ModuleStorage moduleStorage;
+    private AsyncModuleStorage moduleStorage;
     private Module currentModule;
     private boolean isEditMode = false;
 
@@ -45,10 +43,17 @@ public class AddEditModuleActivity extends AppCompatActivity {
         setupToolbar();
         setupClickListeners();
         
-        moduleStorage = new ModuleStorage(this);
+        moduleStorage = new AsyncModuleStorage(this);
         checkEditMode();
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // saves are written behind, make sure they reach the disk before the app may be killed
+        moduleStorage.flush();
+    }
+    
     /**
      * init all view references
      */
@@ -104,18 +109,19 @@ public class AddEditModuleActivity extends AppCompatActivity {
     }
     
     /**
-     * loads existing module data for editing.
+     * loads existing module data for editing in the background. a module that was deleted in the
+     * meantime cannot be edited, the activity is closed then.
      */
     private void loadModuleForEditing(Long moduleId) {
-        List<Module> modules = moduleStorage.loadModules();
-        
-        for (Module module : modules) {
-            if (module.getId().equals(moduleId)) {
-                currentModule = module;
-                populateFields();
-                break;
+        moduleStorage.findById(moduleId, module -> {
+            if (module == null) {
+                Toast.makeText(this, "Modul wurde nicht gefunden", Toast.LENGTH_LONG).show();
+                finish();
+                return;
             }
-        }
+            currentModule = module;
+            populateFields();
+        });
     }
     
     /**
@@ -139,28 +145,20 @@ public class AddEditModuleActivity extends AppCompatActivity {
      * val and saves the module.
      */
     private void saveModule() {
+        if (isEditMode && currentModule == null) {
+            // module is still loading, saving now would create a copy
+            return;
+        }
+        
         if (validateInput()) {
             Module moduleToSave = createModuleFromInput();
             
-            List<Module> modules = moduleStorage.loadModules();
-            
-            if (isEditMode) {
-                // Update existing module
-                for (int i = 0; i < modules.size(); i++) {
-                    if (modules.get(i).getId().equals(currentModule.getId())) {
-                        modules.set(i, moduleToSave);
-                        break;
-                    }
-                }
-            } else {
-                // Add new module
-                moduleToSave.setId(moduleStorage.getNextId());
-                modules.add(moduleToSave);
-            }
-            
-            moduleStorage.saveModules(modules);
-            setResult(RESULT_OK);
-            finish();
+            // new modules get their id assigned by the storage
+            buttonSave.setEnabled(false);
+            moduleStorage.save(moduleToSave, savedModule -> {
+                setResult(RESULT_OK);
+                finish();
+            });
         }
     }
     
@@ -174,47 +172,31 @@ public class AddEditModuleActivity extends AppCompatActivity {
         boolean isValid = true;
         
         // val Modulnummer
-        String modulnummer = editTextModulnummer.getText().toString().trim();
-        if (TextUtils.isEmpty(modulnummer) || modulnummer.length() < 4) {
-            textInputLayoutModulnummer.setError("Modulnummer muss mindestens 4 Zeichen haben");
+        String modulnummerError = ModuleValidator.checkModulnummer(editTextModulnummer.getText().toString());
+        if (modulnummerError != null) {
+            textInputLayoutModulnummer.setError(modulnummerError);
             isValid = false;
         }
         
         // val Modultitel
-        String modultitel = editTextModultitel.getText().toString().trim();
-        if (TextUtils.isEmpty(modultitel) || modultitel.length() < 4) {
-            textInputLayoutModultitel.setError("Modultitel muss mindestens 4 Zeichen haben");
+        String modultitelError = ModuleValidator.checkModultitel(editTextModultitel.getText().toString());
+        if (modultitelError != null) {
+            textInputLayoutModultitel.setError(modultitelError);
             isValid = false;
         }
         
         // val Note1 (optional but must be valid number if provided)
-        String note1Text = editTextNote1.getText().toString().trim();
-        if (!TextUtils.isEmpty(note1Text)) {
-            try {
-                double note1 = Double.parseDouble(note1Text);
-                if (note1 < 1.0 || note1 > 6.0) {
-                    textInputLayoutNote1.setError("Note muss zwischen 1.0 und 6.0 liegen");
-                    isValid = false;
-                }
-            } catch (NumberFormatException e) {
-                textInputLayoutNote1.setError("Ungültige Zahl");
-                isValid = false;
-            }
+        String note1Error = ModuleValidator.checkNote(editTextNote1.getText().toString());
+        if (note1Error != null) {
+            textInputLayoutNote1.setError(note1Error);
+            isValid = false;
         }
         
         // val Note2 (optional but must be valid number if provided)
-        String note2Text = editTextNote2.getText().toString().trim();
-        if (!TextUtils.isEmpty(note2Text)) {
-            try {
-                double note2 = Double.parseDouble(note2Text);
-                if (note2 < 1.0 || note2 > 6.0) {
-                    textInputLayoutNote2.setError("Note muss zwischen 1.0 und 6.0 liegen");
-                    isValid = false;
-                }
-            } catch (NumberFormatException e) {
-                textInputLayoutNote2.setError("Ungültige Zahl");
-                isValid = false;
-            }
+        String note2Error = ModuleValidator.checkNote(editTextNote2.getText().toString());
+        if (note2Error != null) {
+            textInputLayoutNote2.setError(note2Error);
+            isValid = false;
         }
         
         return isValid;
@@ -245,24 +227,9 @@ public class AddEditModuleActivity extends AppCompatActivity {
         module.setModulnummer(editTextModulnummer.getText().toString().trim());
         module.setModultitel(editTextModultitel.getText().toString().trim());
         
-        // prse notes if provided
-        String note1Text = editTextNote1.getText().toString().trim();
-        if (!TextUtils.isEmpty(note1Text)) {
-            try {
-                module.setNote1(Double.parseDouble(note1Text));
-            } catch (NumberFormatException e) {
-                // Already val, should not happen
-            }
-        }
-        
-        String note2Text = editTextNote2.getText().toString().trim();
-        if (!TextUtils.isEmpty(note2Text)) {
-            try {
-                module.setNote2(Double.parseDouble(note2Text));
-            } catch (NumberFormatException e) {
-                // Already val, should not happen
-            }
-        }
+        // prse notes if provided, already validated
+        module.setNote1(ModuleValidator.parseNote(editTextNote1.getText().toString()));
+        module.setNote2(ModuleValidator.parseNote(editTextNote2.getText().toString()));
         
         return module;
     }
@@ -0,0 +1,476 @@
+package ch.wiss.m335_lb;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * asynchronous facade for {@link ModuleStorage}.
+ * all parsing and disk access runs on a background worker, results are posted back to the main thread.
+ */
+public class AsyncModuleStorage {
+
+    /**
+     * interface for receiving the result of a storage operation on the main thread
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    // a single worker keeps reads and writes in submission order, it stops when idle
+    private static final ExecutorService executor = createExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // loads that have been queued but not started yet, later requests join them instead of reading again
+    private static final Object loadLock = new Object();
+    private static final CoalescedLoad<List<Module>> modulesLoad = new CoalescedLoad<>();
+    private static final CoalescedLoad<ModuleIdList> idListLoad = new CoalescedLoad<>();
+
+    private final Context appContext;
+    private ModuleStorage storage;
+    // registered listeners and the wrappers that deliver to them on the main thread
+    private final Map<ModuleStore.ChangeListener, MainThreadListener> changeListeners = new HashMap<>();
+
+    /**
+     * constructor, the underlying storage is opened lazily on the worker thread.
+     *
+     * @param context context used to open the storage
+     */
+    public AsyncModuleStorage(Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "ModuleStorage"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * loads all modules in the background.
+     * concurrent calls are served by a single read, each caller gets its own list.
+     *
+     * @param callback receives the modules on the main thread
+     */
+    public void loadModules(Callback<List<Module>> callback) {
+        modulesLoad.request(callback, () -> storage().loadModules(), ArrayList::new);
+    }
+
+    /**
+     * loads the ids and content hashes of all modules in display order in the background.
+     * concurrent calls are served by a single read.
+     *
+     * @param callback receives the id list on the main thread
+     */
+    public void loadIdList(Callback<ModuleIdList> callback) {
+        idListLoad.request(callback, () -> storage().loadIdList(), idList -> idList);
+    }
+
+    /**
+     * searches, filters and sorts the modules in the background.
+     *
+     * @param query search, sort order and grade range
+     * @param callback receives the id list of the matching modules on the main thread
+     */
+    public void loadIdList(ModuleListQuery query, Callback<ModuleIdList> callback) {
+        submit(() -> deliver(callback, storage().loadIdList(query)));
+    }
+
+    /**
+     * loads the modules for a range of ids in the background.
+     *
+     * @param ids array of ids, must not be modified while the load runs
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     * @param callback receives the modules, null for ids that no longer exist
+     */
+    public void loadModules(long[] ids, int from, int to, Callback<List<Module>> callback) {
+        submit(() -> deliver(callback, storage().loadModules(ids, from, to)));
+    }
+
+    /**
+     * loads the modules for a range of ids and converts them in the background, e.g. into display rows.
+     *
+     * @param ids array of ids, must not be modified while the load runs
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     * @param converter called on the worker for every module that exists
+     * @param callback receives the converted modules, null for ids that no longer exist
+     */
+    public <T> void loadModules(long[] ids, int from, int to, Function<Module, T> converter,
+                                Callback<List<T>> callback) {
+        submit(() -> {
+            List<Module> modules = storage().loadModules(ids, from, to);
+            List<T> converted = new ArrayList<>(modules.size());
+            for (Module module : modules) {
+                converted.add(module != null ? converter.apply(module) : null);
+            }
+            deliver(callback, converted);
+        });
+    }
+
+    /**
+     * calculates the overall average in the background.
+     *
+     * @param callback receives the average, or null if no module has complete grades
+     */
+    public void loadOverallAverage(Callback<Double> callback) {
+        submit(() -> deliver(callback, storage().getOverallAverage()));
+    }
+
+    /**
+     * loads the grade statistics in the background, they are shared and must not be changed.
+     *
+     * @param callback receives the statistics on the main thread
+     */
+    public void loadStatistics(Callback<ModuleStatistics> callback) {
+        submit(() -> deliver(callback, storage().getStatistics()));
+    }
+
+    /**
+     * looks up a single module in the background.
+     *
+     * @param id id of the module
+     * @param callback receives the module, or null if it does not exist
+     */
+    public void findById(long id, Callback<Module> callback) {
+        submit(() -> deliver(callback, storage().findById(id)));
+    }
+
+    /**
+     * saves a single module in the background, new modules without id get the next free id.
+     *
+     * @param module module to save
+     * @param callback receives the saved module, may be null
+     */
+    public void save(Module module, Callback<Module> callback) {
+        submitWrite(() -> {
+            ModuleStorage storage = storage();
+            if (module.getId() == null) {
+                module.setId(storage.getNextId());
+            }
+            storage.upsert(module);
+            deliver(callback, module);
+        });
+    }
+
+    /**
+     * deletes a single module in the background.
+     *
+     * @param id id of the module to delete
+     * @param callback receives true if the module existed, may be null
+     */
+    public void delete(long id, Callback<Boolean> callback) {
+        submitWrite(() -> deliver(callback, storage().delete(id)));
+    }
+
+    /**
+     * saves a complete list of modules in the background.
+     *
+     * @param modules List of modules to save
+     * @param callback called once the list has been written, may be null
+     */
+    public void saveModules(List<Module> modules, Callback<Void> callback) {
+        List<Module> copy = new ArrayList<>(modules);
+        submitWrite(() -> {
+            storage().saveModules(copy);
+            deliver(callback, null);
+        });
+    }
+
+    /**
+     * imports modules from a csv or json document in the background, see {@link ModuleImporter}.
+     *
+     * @param uri document to import
+     * @param listener receives the progress on the main thread after every batch, may be null
+     * @param callback receives the report of the import
+     */
+    public void importModules(Uri uri, ModuleImporter.ProgressListener listener,
+                              Callback<ModuleImporter.Report> callback) {
+        submitWrite(() -> {
+            ModuleImporter.ProgressListener mainThreadListener = listener == null ? null
+                    : (imported, rejected) -> mainHandler.post(() -> listener.onProgress(imported, rejected));
+            ModuleImporter.Report report;
+            try (InputStream in = appContext.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    report = ModuleImporter.Report.failed("Datei konnte nicht geöffnet werden");
+                } else {
+                    Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                    report = storage().importModules(reader, mainThreadListener);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                report = ModuleImporter.Report.failed("Datei konnte nicht geöffnet werden");
+            }
+            deliver(callback, report);
+        });
+    }
+
+    /**
+     * exports all modules to a document in the background, see {@link ModuleExporter}.
+     * a cancelled or failed export deletes the partly written document.
+     *
+     * @param uri document to write, e.g. created through the storage access framework
+     * @param format file format
+     * @param listener receives the progress on the main thread after every page, may be null
+     * @param callback receives the number of exported modules, -1 if cancelled or null if writing failed
+     * @return the export, {@link ModuleExporter#cancel()} stops it
+     */
+    public ModuleExporter exportModules(Uri uri, ModuleExporter.Format format,
+                                        ModuleExporter.ProgressListener listener, Callback<Integer> callback) {
+        ModuleExporter.ProgressListener mainThreadListener = listener == null ? null
+                : (exported, total) -> mainHandler.post(() -> listener.onProgress(exported, total));
+        // every page is read from the state taken at the start, see ModuleStore#getSnapshot()
+        ModuleView[] snapshot = new ModuleView[1];
+        ModuleExporter exporter = new ModuleExporter(
+                (ids, from, to) -> snapshot[0].findByIds(ids, from, to), format, mainThreadListener);
+
+        submit(() -> {
+            snapshot[0] = storage().getSnapshot();
+            Integer exported = null;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(uri)) {
+                if (out != null) {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    exported = exporter.exportTo(snapshot[0].getIdList().ids(), writer);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            if (exported == null || exported < 0) {
+                try {
+                    DocumentsContract.deleteDocument(appContext.getContentResolver(), uri);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            deliver(callback, exported);
+        });
+        return exporter;
+    }
+
+    /**
+     * opens the repository in the background and delivers the catalog of the partitions.
+     * its methods only read memory, so it may be queried on the main thread.
+     *
+     * @param callback receives the catalog on the main thread
+     */
+    public void loadPartitions(Callback<ModulePartitions> callback) {
+        submit(() -> deliver(callback, storage().getPartitions()));
+    }
+
+    /**
+     * creates an empty partition in the background.
+     *
+     * @param name name of the partition
+     * @param callback receives the new partition, may be null
+     */
+    public void addPartition(String name, Callback<ModulePartitions.Partition> callback) {
+        submit(() -> deliver(callback, storage().addPartition(name)));
+    }
+
+    /**
+     * activates another partition in the background, queued after all earlier reads and writes.
+     * its modules are only read now, the change listeners are told that all modules changed.
+     *
+     * @param partitionId id of the partition
+     * @param callback receives false if there is no such partition, may be null
+     */
+    public void activatePartition(long partitionId, Callback<Boolean> callback) {
+        // a load of the previous partition must not be joined by loads queued after the switch
+        submitWrite(() -> deliver(callback, storage().activatePartition(partitionId)));
+    }
+
+    /**
+     * reads the preview saved by {@link #savePreview()} on the calling thread. the file holds only a
+     * screenful of modules and the store is not opened, so this is fast enough before the first frame.
+     *
+     * @return the preview, or null if there is none
+     */
+    public ModulePreview readPreview() {
+        return ModulePreview.read(ModuleRepository.getPreviewFile(appContext));
+    }
+
+    /**
+     * saves the first rows and the overall average for the next cold start in the background.
+     */
+    public void savePreview() {
+        submit(() -> storage().savePreview());
+    }
+
+    /**
+     * writes the changes held back by the write-behind delay in the background, after all queued writes.
+     * called when the app goes to the background, so no change is lost if the process is killed.
+     */
+    public void flush() {
+        submit(() -> storage().flush());
+    }
+
+    /**
+     * registers a listener that is told on the main thread which modules changed, no matter which screen
+     * or worker changed them. changes made before the main thread gets to run are delivered together.
+     *
+     * @param listener listener to add, receives null ids if all modules may have changed
+     */
+    public void addChangeListener(ModuleStore.ChangeListener listener) {
+        MainThreadListener wrapper = new MainThreadListener(listener);
+        changeListeners.put(listener, wrapper);
+        submit(() -> storage().addChangeListener(wrapper));
+    }
+
+    /**
+     * removes a listener, nothing is delivered to it after this call.
+     *
+     * @param listener listener to remove
+     */
+    public void removeChangeListener(ModuleStore.ChangeListener listener) {
+        MainThreadListener wrapper = changeListeners.remove(listener);
+        if (wrapper != null) {
+            wrapper.removed = true;
+            submit(() -> storage().removeChangeListener(wrapper));
+        }
+    }
+
+    private void submit(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * queues a write. a load queued before the write must not be joined by later loads,
+     * otherwise they would miss the write.
+     */
+    private void submitWrite(Runnable task) {
+        synchronized (loadLock) {
+            modulesLoad.close();
+            idListLoad.close();
+            executor.execute(task);
+        }
+    }
+
+    private static <T> void deliver(Callback<T> callback, T result) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onResult(result));
+        }
+    }
+
+    /**
+     * opens the storage on first use, always called on the worker thread.
+     */
+    private ModuleStorage storage() {
+        if (storage == null) {
+            storage = new ModuleStorage(appContext);
+        }
+        return storage;
+    }
+
+    /**
+     * collects changed ids on the writing thread and delivers them with a single post to the main thread.
+     */
+    private static class MainThreadListener implements ModuleStore.ChangeListener {
+
+        private final ModuleStore.ChangeListener listener;
+        // ids changed since the last delivery, null once all modules may have changed
+        private Set<Long> pendingIds = new LinkedHashSet<>();
+        private boolean posted;
+        // only touched on the main thread
+        boolean removed;
+
+        MainThreadListener(ModuleStore.ChangeListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void onModulesChanged(long[] ids) {
+            if (ids == null) {
+                pendingIds = null;
+            } else if (pendingIds != null) {
+                for (long id : ids) {
+                    pendingIds.add(id);
+                }
+            }
+            if (!posted) {
+                posted = true;
+                mainHandler.post(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            long[] ids;
+            synchronized (this) {
+                ids = pendingIds == null ? null : pendingIds.stream().mapToLong(Long::longValue).toArray();
+                pendingIds = new LinkedHashSet<>();
+                posted = false;
+            }
+            if (!removed) {
+                listener.onModulesChanged(ids);
+            }
+        }
+    }
+
+    /**
+     * one kind of load whose queued requests are served by a single read.
+     */
+    private static class CoalescedLoad<T> {
+
+        // callbacks of the queued read that has not started yet
+        private List<Callback<T>> pending;
+
+        void request(Callback<T> callback, Supplier<T> reader, UnaryOperator<T> copier) {
+            synchronized (loadLock) {
+                if (pending == null) {
+                    List<Callback<T>> batch = new ArrayList<>();
+                    pending = batch;
+                    executor.execute(() -> run(batch, reader, copier));
+                }
+                pending.add(callback);
+            }
+        }
+
+        /**
+         * stops later requests from joining the queued read, e.g. because a write was queued after it.
+         */
+        void close() {
+            pending = null;
+        }
+
+        private void run(List<Callback<T>> batch, Supplier<T> reader, UnaryOperator<T> copier) {
+            synchronized (loadLock) {
+                if (pending == batch) {
+                    close();
+                }
+            }
+
+            T result = reader.get();
+            for (Callback<T> callback : batch) {
+                T copy = copier.apply(result);
+                mainHandler.post(() -> callback.onResult(copy));
+            }
+        }
+    }
+}
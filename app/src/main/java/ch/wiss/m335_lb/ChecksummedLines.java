@@ -0,0 +1,200 @@
+package ch.wiss.m335_lb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * line format of the module log and the json snapshot: every line starts with the crc32 of its text as
+ * 8 hex digits and a space, e.g. {@code 1a2b3c4d {"op":"u","id":1,...}}. a torn or damaged line is
+ * detected by its checksum and can be skipped without losing the lines after it. lines without checksum,
+ * written before it was introduced, are still read as they are.
+ */
+public class ChecksummedLines {
+
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private ChecksummedLines() {
+    }
+
+    /**
+     * thrown for a line whose text does not match its checksum, the reader continues with the next line
+     */
+    public static class CorruptLineException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CorruptLineException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * writes lines with their checksum to a file.
+     */
+    public static class LineWriter implements Closeable {
+
+        private final FileOutputStream file;
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] prefix = new byte[CHECKSUM_LENGTH + 1];
+
+        /**
+         * constructor
+         *
+         * @param file stream to write to, closed together with the writer
+         */
+        public LineWriter(FileOutputStream file) {
+            this.file = file;
+            this.out = new BufferedOutputStream(file);
+            prefix[CHECKSUM_LENGTH] = ' ';
+        }
+
+        /**
+         * writes one line, the text must not contain a line break.
+         *
+         * @param line text of the line
+         */
+        public void write(String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            long value = crc.getValue();
+            for (int i = CHECKSUM_LENGTH - 1; i >= 0; i--) {
+                prefix[i] = HEX[(int) (value & 0xf)];
+                value >>>= 4;
+            }
+            out.write(prefix);
+            out.write(bytes);
+            out.write('\n');
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * flushes and waits until the written lines are on the disk.
+         */
+        public void sync() throws IOException {
+            out.flush();
+            file.getFD().sync();
+        }
+
+        /**
+         * writes a line break, so a line left unfinished by a failed write is not continued by the next one.
+         */
+        public void endLine() throws IOException {
+            out.write('\n');
+        }
+
+        /**
+         * closes the file without writing what is still buffered, e.g. after a write failed halfway.
+         */
+        public void discard() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * reads lines and checks them against their checksum.
+     */
+    public static class LineReader implements Closeable {
+
+        private final InputStream in;
+        private final CRC32 crc = new CRC32();
+        private byte[] line = new byte[256];
+        private int corruptLines;
+
+        /**
+         * constructor
+         *
+         * @param in stream to read from, closed together with the reader
+         */
+        public LineReader(InputStream in) {
+            this.in = new BufferedInputStream(in);
+        }
+
+        /**
+         * reads the next line.
+         *
+         * @return text of the line without checksum, or null at the end of the stream
+         * @throws CorruptLineException if the line does not match its checksum, the next call continues after it
+         * @throws IOException if the stream fails
+         */
+        public String next() throws IOException {
+            int length = 0;
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = (byte) c;
+            }
+            if (c == -1 && length == 0) {
+                return null;
+            }
+
+            if (!hasChecksum(length)) {
+                return new String(line, 0, length, StandardCharsets.UTF_8);
+            }
+            int textLength = length - CHECKSUM_LENGTH - 1;
+            crc.reset();
+            crc.update(line, CHECKSUM_LENGTH + 1, textLength);
+            if (crc.getValue() != parseChecksum()) {
+                corruptLines++;
+                throw new CorruptLineException("checksum mismatch in line of " + length + " bytes");
+            }
+            return new String(line, CHECKSUM_LENGTH + 1, textLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return number of lines skipped because their checksum did not match
+         */
+        public int getCorruptLines() {
+            return corruptLines;
+        }
+
+        private boolean hasChecksum(int length) {
+            if (length <= CHECKSUM_LENGTH || line[CHECKSUM_LENGTH] != ' ') {
+                return false;
+            }
+            for (int i = 0; i < CHECKSUM_LENGTH; i++) {
+                if (Character.digit(line[i], 16) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long parseChecksum() {
+            long value = 0;
+            for (int i = 0; i < CHECKSUM_LENGTH; i++) {
+                value = (value << 4) | Character.digit(line[i], 16);
+            }
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
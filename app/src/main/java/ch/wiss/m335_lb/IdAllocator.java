@@ -0,0 +1,107 @@
+package ch.wiss.m335_lb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hands out unique ids without a disk write per id.
+ * ids are reserved in blocks: before an id beyond the reserved range is handed out, the new end of the
+ * range (the high-water mark) is persisted. ids below the mark are then handed out from an
+ * {@link AtomicLong}, without locking. after a crash the allocator continues at the persisted mark, so the
+ * unused rest of the last block is skipped but no id is ever handed out twice.
+ */
+public class IdAllocator {
+
+    /**
+     * persistent storage of the high-water mark
+     */
+    public interface Store {
+        /**
+         * @return the persisted mark, or the given default if none has been written yet
+         */
+        long readHighWater(long defaultValue);
+
+        /**
+         * persists the mark, must not return before it is durable.
+         *
+         * @return true if the mark was written
+         */
+        boolean writeHighWater(long highWater);
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final Store store;
+    private final int blockSize;
+    // next id to hand out
+    private final AtomicLong next;
+    // ids below this mark are reserved in the store, only grows
+    private volatile long highWater;
+
+    /**
+     * constructor using the default block size
+     *
+     * @param store storage of the high-water mark
+     * @param minimumId smallest id that may be handed out, e.g. one above the largest stored id
+     */
+    public IdAllocator(Store store, long minimumId) {
+        this(store, minimumId, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * constructor
+     *
+     * @param store storage of the high-water mark
+     * @param minimumId smallest id that may be handed out, e.g. one above the largest stored id
+     * @param blockSize number of ids reserved with one write
+     */
+    public IdAllocator(Store store, long minimumId, int blockSize) {
+        this.store = store;
+        this.blockSize = blockSize;
+        // every id below the persisted mark may have been handed out before
+        this.highWater = Math.max(store.readHighWater(1), minimumId);
+        this.next = new AtomicLong(highWater);
+    }
+
+    /**
+     * @return a new unique id
+     */
+    public long nextId() {
+        return allocate(1);
+    }
+
+    /**
+     * hands out a block of consecutive ids.
+     *
+     * @param count number of ids
+     * @return first id, the block ends at {@code first + count - 1}
+     * @throws IllegalStateException if a new range could not be persisted
+     */
+    public long allocate(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        while (true) {
+            long first = next.get();
+            long end = first + count;
+            if (end > highWater) {
+                reserve(end);
+            } else if (next.compareAndSet(first, end)) {
+                return first;
+            }
+        }
+    }
+
+    /**
+     * moves the high-water mark beyond {@code end}, only taken once per block.
+     */
+    private synchronized void reserve(long end) {
+        if (end <= highWater) {
+            return;
+        }
+        long newHighWater = end + blockSize;
+        if (!store.writeHighWater(newHighWater)) {
+            throw new IllegalStateException("could not reserve ids up to " + newHighWater);
+        }
+        highWater = newHighWater;
+    }
+}
@@ -1,15 +1,26 @@
 package ch.wiss.m335_lb;
 
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Trace;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -19,9 +30,15 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import java.util.List;
 import androidx.cardview.widget.CardView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 /**
  * main activity displaying the overview of all modules.
  * provides functionality to view, add and edit modules.
@@ -30,19 +47,49 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
 
     public static final String EXTRA_MODULE_ID = "module_id";
     
+    private static final String[] SORT_LABELS = {
+            "Erfassungsreihenfolge", "Modulnummer", "Modultitel",
+            "Durchschnitt (beste zuerst)", "Durchschnitt (tiefste zuerst)", "Vollständigkeit"};
+    private static final ModuleSortIndex.SortOrder[] SORT_ORDERS = {
+            ModuleSortIndex.SortOrder.INSERTION, ModuleSortIndex.SortOrder.NUMBER, ModuleSortIndex.SortOrder.TITLE,
+            ModuleSortIndex.SortOrder.AVERAGE, ModuleSortIndex.SortOrder.AVERAGE, ModuleSortIndex.SortOrder.COMPLETENESS};
+    private static final boolean[] SORT_DESCENDING = {false, false, false, true, false, false};
+    
+    private static final Metrics.Histogram FIRST_FRAME_TIME = Metrics.getInstance().timer("main.onCreateToFirstFrame");
+    
+    private static final String[] FILTER_LABELS = {"Alle Module", "Genügend (ab 4.0)", "Ungenügend (unter 4.0)", "Sehr gut (ab 5.5)"};
+    private static final double[][] FILTER_RANGES = {
+            {Double.NaN, Double.NaN}, {4.0, Double.NaN}, {Double.NaN, Math.nextDown(4.0)}, {5.5, Double.NaN}};
+    
     private RecyclerView recyclerViewModules;
     private TextView textViewEmpty;
+    private EditText editTextSearch;
     private FloatingActionButton fabAddModule;
     private CardView cardViewOverallAverage;
     private TextView textViewOverallAverage;
     
     private ModuleAdapter moduleAdapter;
-    private ModuleStorage moduleStorage;
-    private List<Module> modules;
-    private ActivityResultLauncher<Intent> addEditModuleLauncher;
+    private AsyncModuleStorage moduleStorage;
+    private final ModuleStore.ChangeListener changeListener = ids -> {
+        previewStale = true;
+        loadModules();
+    };
+    // shown until the first list of the store has been applied, then checked against it
+    private ModulePreview preview;
+    private boolean previewStale;
+    // catalog of the semesters, null until the repository has been opened
+    private ModulePartitions partitions;
+    private ActivityResultLauncher<String[]> importLauncher;
+    private ActivityResultLauncher<String> csvExportLauncher;
+    private ActivityResultLauncher<String> jsonExportLauncher;
+    private ModuleListQuery listQuery = ModuleListQuery.ALL;
+    private int sortSelection;
+    private int filterSelection;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = System.nanoTime();
+        Trace.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
@@ -52,25 +99,74 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
             return insets;
         });
         
+        moduleStorage = new AsyncModuleStorage(this);
+        
         setupActivityResultLauncher();
         initializeViews();
         setupRecyclerView();
         setupClickListeners();
+        showPreview();
         
-        moduleStorage = new ModuleStorage(this);
+        // edits, deletes and imports from any screen show up through the listener, no reload after returning
+        moduleStorage.addChangeListener(changeListener);
         loadModules();
+        moduleStorage.loadPartitions(loaded -> {
+            partitions = loaded;
+            updatePartitionTitle();
+        });
+        measureFirstFrame(createStart);
+        Trace.endSection();
     }
     
     /**
-     * sets up the activity result launcher for AddEditModuleActivty
+     * records the time from the start of onCreate until the first frame has been drawn.
+     *
+     * @param createStart start of onCreate from {@link System#nanoTime()}
+     */
+    private void measureFirstFrame(long createStart) {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // runs after the traversal that draws the frame
+                decorView.post(() -> FIRST_FRAME_TIME.recordSince(createStart));
+                return true;
+            }
+        });
+    }
+    
+    @Override
+    protected void onDestroy() {
+        moduleStorage.removeChangeListener(changeListener);
+        super.onDestroy();
+    }
+    
+    /**
+     * sets up the activity result launchers for choosing the import and export documents
      */
     private void setupActivityResultLauncher() {
-        addEditModuleLauncher = registerForActivityResult(
-            new ActivityResultContracts.StartActivityForResult(),
-            result -> {
-                if (result.getResultCode() == RESULT_OK) {
-                    // reload modules when returning from AddEditModuleActivity
-                    loadModules();
+        importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(),
+            uri -> {
+                if (uri != null) {
+                    importModules(uri);
+                }
+            }
+        );
+        csvExportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(ModuleExporter.Format.CSV.getMimeType()),
+            uri -> {
+                if (uri != null) {
+                    exportModules(uri, ModuleExporter.Format.CSV);
+                }
+            }
+        );
+        jsonExportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(ModuleExporter.Format.JSON.getMimeType()),
+            uri -> {
+                if (uri != null) {
+                    exportModules(uri, ModuleExporter.Format.JSON);
                 }
             }
         );
@@ -81,7 +177,10 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
      */
     private void initializeViews() {
         recyclerViewModules = findViewById(R.id.recyclerViewModules);
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
         textViewEmpty = findViewById(R.id.textViewEmpty);
+        editTextSearch = findViewById(R.id.editTextSearch);
         fabAddModule = findViewById(R.id.fabAddModule);
         cardViewOverallAverage = findViewById(R.id.cardViewOverallAverage);
         textViewOverallAverage = findViewById(R.id.textViewOverallAverage);
@@ -91,12 +190,18 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
      * sets up the RecyclerView with adapter and layout manager
      */
     private void setupRecyclerView() {
-        moduleAdapter = new ModuleAdapter();
+        moduleAdapter = new ModuleAdapter(new ModulePager(moduleStorage));
         moduleAdapter.setOnModuleClickListener(this);
         moduleAdapter.setOnModuleLongClickListener(this);
         
         recyclerViewModules.setLayoutManager(new LinearLayoutManager(this));
         recyclerViewModules.setAdapter(moduleAdapter);
+        // the size of the list comes from the layout, not from its rows
+        recyclerViewModules.setHasFixedSize(true);
+        // rows just scrolled out are rebound without the adapter when flinging back, and the pool holds
+        // about a screenful, so a full rebind (e.g. after the preview) does not inflate new rows
+        recyclerViewModules.setItemViewCacheSize(4);
+        recyclerViewModules.getRecycledViewPool().setMaxRecycledViews(0, 16);
     }
     
 
@@ -106,24 +211,281 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
      */
     private void setupClickListeners() {
         fabAddModule.setOnClickListener(v -> openAddEditActivity(null));
+        cardViewOverallAverage.setOnClickListener(v -> showStatisticsDialog());
+        editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                listQuery = listQuery.withSearchText(s.toString());
+                loadModules();
+            }
+        });
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (previewStale) {
+            moduleStorage.savePreview();
+            previewStale = false;
+        }
+        // saves are written behind, make sure they reach the disk before the app may be killed
+        moduleStorage.flush();
     }
     
     /**
-     * Loads modules from storage and updates the display.
+     * shows the first rows and the overall average saved at the last pause while the store is still
+     * being opened, so the first frame does not depend on the number of modules.
+     * the list of the store replaces them as soon as it has been loaded.
      */
-    private void loadModules() {
-        modules = moduleStorage.loadModules();
-        moduleAdapter.setModules(modules);
+    private void showPreview() {
+        preview = moduleStorage.readPreview();
+        if (preview == null) {
+            previewStale = true;
+            return;
+        }
+        moduleAdapter.showPreview(preview);
         updateEmptyState();
-        updateOverallAverage();
+        showOverallAverage(preview.getOverallAverage());
+    }
+    
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        menu.findItem(R.id.action_metrics).setVisible(isDebuggable());
+        return true;
+    }
+    
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_partitions) {
+            showPartitionDialog();
+            return true;
+        } else if (item.getItemId() == R.id.action_sort) {
+            showSortDialog();
+            return true;
+        } else if (item.getItemId() == R.id.action_filter) {
+            showFilterDialog();
+            return true;
+        } else if (item.getItemId() == R.id.action_import) {
+            importLauncher.launch(new String[]{"text/*", "application/json", "application/vnd.ms-excel"});
+            return true;
+        } else if (item.getItemId() == R.id.action_export_csv) {
+            csvExportLauncher.launch(ModuleExporter.Format.CSV.getFileName());
+            return true;
+        } else if (item.getItemId() == R.id.action_export_json) {
+            jsonExportLauncher.launch(ModuleExporter.Format.JSON.getFileName());
+            return true;
+        } else if (item.getItemId() == R.id.action_metrics) {
+            showMetricsDialog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+    
+    /**
+     * shows the name of the active semester below the title, once there is more than one.
+     */
+    private void updatePartitionTitle() {
+        if (partitions != null && getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(partitions.getAll().size() > 1 ? partitions.getActive().getName() : null);
+        }
+    }
+    
+    /**
+     * lets the user switch to another semester or create a new one. every semester shows its summary,
+     * the title the average over all of them, none of the other semesters has to be read for this.
+     */
+    private void showPartitionDialog() {
+        if (partitions == null) {
+            return;
+        }
+        List<ModulePartitions.Partition> all = partitions.getAll();
+        String[] labels = new String[all.size() + 1];
+        int checked = -1;
+        for (int i = 0; i < all.size(); i++) {
+            ModulePartitions.Partition partition = all.get(i);
+            Double average = partition.getAverage();
+            labels[i] = partition.getName() + " (" + partition.getModuleCount() + " Module"
+                    + (average != null ? String.format(", Ø %.1f", average) : "") + ")";
+            if (partition.getId() == partitions.getActiveId()) {
+                checked = i;
+            }
+        }
+        labels[all.size()] = "Neues Semester…";
+        
+        Double totalAverage = ModulePartitions.getTotalAverage(all);
+        new AlertDialog.Builder(this)
+                .setTitle(totalAverage != null ? String.format("Semester (gesamt Ø %.1f)", totalAverage) : "Semester")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    if (which == all.size()) {
+                        showAddPartitionDialog();
+                    } else {
+                        activatePartition(all.get(which).getId());
+                    }
+                })
+                .show();
+    }
+    
+    /**
+     * asks for the name of a new semester, creates it and switches to it.
+     */
+    private void showAddPartitionDialog() {
+        EditText editTextName = new EditText(this);
+        editTextName.setHint("z.B. HS24");
+        editTextName.setSingleLine(true);
+        new AlertDialog.Builder(this)
+                .setTitle("Neues Semester")
+                .setView(editTextName)
+                .setPositiveButton("Erstellen", (dialog, which) -> {
+                    String name = editTextName.getText().toString().trim();
+                    if (name.isEmpty()) {
+                        Toast.makeText(this, "Bitte einen Namen eingeben", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    moduleStorage.addPartition(name, partition -> activatePartition(partition.getId()));
+                })
+                .setNegativeButton("Abbrechen", null)
+                .show();
+    }
+    
+    /**
+     * opens another semester in the background, the list is reloaded through the change listener.
+     *
+     * @param partitionId id of the semester
+     */
+    private void activatePartition(long partitionId) {
+        moduleStorage.activatePartition(partitionId, activated -> updatePartitionTitle());
+    }
+    
+    /**
+     * lets the user choose the sort order of the list.
+     */
+    private void showSortDialog() {
+        new AlertDialog.Builder(this)
+                .setTitle("Sortieren nach")
+                .setSingleChoiceItems(SORT_LABELS, sortSelection, (dialog, which) -> {
+                    sortSelection = which;
+                    listQuery = listQuery.withSortOrder(SORT_ORDERS[which], SORT_DESCENDING[which]);
+                    loadModules();
+                    dialog.dismiss();
+                })
+                .show();
+    }
+    
+    /**
+     * lets the user restrict the list to a grade range.
+     */
+    private void showFilterDialog() {
+        new AlertDialog.Builder(this)
+                .setTitle("Nach Note filtern")
+                .setSingleChoiceItems(FILTER_LABELS, filterSelection, (dialog, which) -> {
+                    filterSelection = which;
+                    listQuery = listQuery.withGradeRange(FILTER_RANGES[which][0], FILTER_RANGES[which][1]);
+                    loadModules();
+                    dialog.dismiss();
+                })
+                .show();
+    }
+    
+    /**
+     * imports the chosen csv or json file in the background and shows the progress and the report.
+     *
+     * @param uri document to import
+     */
+    private void importModules(Uri uri) {
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Import")
+                .setMessage("Module werden importiert…")
+                .setCancelable(false)
+                .show();
+
+        moduleStorage.importModules(uri,
+                (imported, rejected) -> progressDialog.setMessage(imported + " Module importiert…"),
+                report -> {
+                    progressDialog.dismiss();
+                    showImportReport(report);
+                });
+    }
+    
+    /**
+     * shows the result of an import together with the first rejected rows.
+     */
+    private void showImportReport(ModuleImporter.Report report) {
+        StringBuilder message = new StringBuilder();
+        if (report.getFailure() != null) {
+            message.append(report.getFailure()).append("\n\n");
+        }
+        message.append(report.getImported()).append(" Module importiert");
+        if (report.getRejected() > 0) {
+            message.append(", ").append(report.getRejected()).append(" Zeilen übersprungen\n");
+            for (String error : report.getErrors()) {
+                message.append('\n').append(error);
+            }
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Import abgeschlossen")
+                .setMessage(message.toString())
+                .setPositiveButton("OK", null)
+                .show();
+    }
+    
+    /**
+     * exports all modules to the chosen document in the background, the progress dialog allows cancelling it.
+     *
+     * @param uri document to write
+     * @param format file format
+     */
+    private void exportModules(Uri uri, ModuleExporter.Format format) {
+        ModuleExporter[] export = new ModuleExporter[1];
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Export")
+                .setMessage("Module werden exportiert…")
+                .setNegativeButton("Abbrechen", (dialog, which) -> export[0].cancel())
+                .setCancelable(false)
+                .show();
+
+        export[0] = moduleStorage.exportModules(uri, format,
+                (exported, total) -> progressDialog.setMessage(exported + " von " + total + " Modulen exportiert…"),
+                exported -> {
+                    progressDialog.dismiss();
+                    if (exported == null) {
+                        Toast.makeText(this, "Export fehlgeschlagen", Toast.LENGTH_LONG).show();
+                    } else if (exported >= 0) {
+                        Toast.makeText(this, exported + " Module exportiert", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+    
+    /**
+     * Loads the module ids matching the current search, filter and sort order in the background
+     * and updates the display. the modules themselves are loaded page by page by the adapter.
+     */
+    private void loadModules() {
+        moduleStorage.loadIdList(listQuery, idList -> moduleAdapter.submitIdList(idList, () -> {
+            updateEmptyState();
+            updateOverallAverage();
+        }));
     }
     
     /**
      * update the visibility of empty state message based on module count
      */
     private void updateEmptyState() {
-        if (modules.isEmpty()) {
+        if (moduleAdapter.getItemCount() == 0) {
             recyclerViewModules.setVisibility(View.GONE);
+            textViewEmpty.setText(!listQuery.hasSearchText() && !listQuery.hasGradeFilter()
+                    ? "Noch keine Module vorhanden.\nTippe auf + um ein Modul hinzuzufügen."
+                    : "Keine Module gefunden.");
             textViewEmpty.setVisibility(View.VISIBLE);
         } else {
             recyclerViewModules.setVisibility(View.VISIBLE);
@@ -132,26 +494,111 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
     }
     
     /**
-     * calculates and displays the "overall" average grade of all modules.
+     * calculates the "overall" average grade of all modules in the background and displays it.
      */
     private void updateOverallAverage() {
-        List<Module> modulesWithGrades = modules.stream()
-                .filter(Module::hasCompleteGrades)
-                .collect(java.util.stream.Collectors.toList());
-        
-        if (modulesWithGrades.isEmpty()) {
+        moduleStorage.loadOverallAverage(totalAverage -> {
+            showOverallAverage(totalAverage);
+            if (preview != null) {
+                // the preview is saved again at the next pause if it no longer shows the stored modules
+                if (listQuery != ModuleListQuery.ALL || !preview.matches(moduleAdapter.getIdList(), totalAverage)) {
+                    previewStale = true;
+                }
+                preview = null;
+            }
+        });
+    }
+    
+    /**
+     * @param totalAverage overall average, or null to hide the card
+     */
+    private void showOverallAverage(Double totalAverage) {
+        if (totalAverage == null) {
             cardViewOverallAverage.setVisibility(View.GONE);
         } else {
-            double totalAverage = modulesWithGrades.stream()
-                    .mapToDouble(Module::getDurchschnittsnote)
-                    .average()
-                    .orElse(0.0);
-            
             textViewOverallAverage.setText(String.format("%.1f", totalAverage));
             cardViewOverallAverage.setVisibility(View.VISIBLE);
         }
     }
     
+    /**
+     * loads the grade statistics in the background and shows them in a dialog.
+     */
+    private void showStatisticsDialog() {
+        moduleStorage.loadStatistics(statistics -> {
+            if (statistics.getCount() == 0) {
+                return;
+            }
+
+            StringBuilder message = new StringBuilder();
+            message.append(String.format("Median: %.2f%n", statistics.getMedian()));
+            message.append(String.format("10. / 90. Perzentil: %.2f / %.2f%n",
+                    statistics.getPercentile(10), statistics.getPercentile(90)));
+            message.append(String.format("Tiefste / höchste Note: %.2f / %.2f%n%n",
+                    statistics.getMin(), statistics.getMax()));
+
+            int[] histogram = statistics.getHistogram();
+            for (int bucket = histogram.length - 1; bucket >= 0; bucket--) {
+                message.append(String.format("%.1f – %.1f: %d%n", ModuleStatistics.getBucketStart(bucket),
+                        ModuleStatistics.getBucketStart(bucket + 1), histogram[bucket]));
+            }
+            message.append('\n');
+
+            for (Map.Entry<String, Double> entry : statistics.getAveragesByPrefix().entrySet()) {
+                message.append(String.format("%sxx: %.2f%n", entry.getKey(), entry.getValue()));
+            }
+
+            new AlertDialog.Builder(this)
+                    .setTitle("Statistik")
+                    .setMessage(message.toString().trim())
+                    .setPositiveButton("OK", null)
+                    .show();
+        });
+    }
+    
+    /**
+     * @return true for debug builds, only they show the metrics
+     */
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+    
+    /**
+     * shows the current metrics, see {@link Metrics}. the other storage backend can be selected here
+     * to compare the two.
+     */
+    private void showMetricsDialog() {
+        StringWriter text = new StringWriter();
+        Metrics.getInstance().dump("", new PrintWriter(text));
+        ModuleRepository.Backend other = ModuleRepository.getSelectedBackend(this) == ModuleRepository.Backend.LOG
+                ? ModuleRepository.Backend.SQLITE : ModuleRepository.Backend.LOG;
+        new AlertDialog.Builder(this)
+                .setTitle("Metriken")
+                .setMessage(text.toString().trim())
+                .setPositiveButton("OK", null)
+                .setNeutralButton("Zurücksetzen", (dialog, which) -> Metrics.getInstance().reset())
+                .setNegativeButton(other == ModuleRepository.Backend.LOG ? "Log verwenden" : "SQLite verwenden",
+                        (dialog, which) -> {
+                            if (ModuleRepository.selectBackend(this, other)) {
+                                Toast.makeText(this, "Wird nach einem Neustart verwendet", Toast.LENGTH_LONG).show();
+                            }
+                        })
+                .show();
+    }
+    
+    /**
+     * adds the metrics to {@code adb shell dumpsys activity ch.wiss.m335_lb}, the argument
+     * {@code --reset-metrics} resets them after writing.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics.getInstance().dump(prefix, writer);
+        if (args != null && Arrays.asList(args).contains("--reset-metrics")) {
+            Metrics.getInstance().reset();
+        }
+    }
+    
     /**
      * Oopens AddEditModuleActivity for creating new or editing existing module.
      * 
@@ -164,7 +611,7 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
             intent.putExtra(EXTRA_MODULE_ID, module.getId());
         }
         
-        addEditModuleLauncher.launch(intent);
+        startActivity(intent);
     }
     
     @Override
@@ -197,10 +644,6 @@ public class MainActivity extends AppCompatActivity implements ModuleAdapter.OnM
      * @param moduleToDelete Module to del
      */
     private void deleteModule(Module moduleToDelete) {
-        modules.removeIf(module -> module.getId().equals(moduleToDelete.getId()));
-        moduleStorage.saveModules(modules);
-        moduleAdapter.setModules(modules);
-        updateEmptyState();
-        updateOverallAverage();
+        moduleStorage.delete(moduleToDelete.getId(), null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package ch.wiss.m335_lb;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * in-process registry of counters and histograms, e.g. for the duration of storage calls.
+ * callers look up their metrics once and keep them in a field, recording a value is then a few atomic
+ * increments without locking or allocation. the whole registry can be dumped as text to compare builds,
+ * see {@link #dump(String, PrintWriter)}.
+ */
+public class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * constructor, the app uses the shared registry from {@link #getInstance()}
+     */
+    Metrics() {
+    }
+
+    /**
+     * @return registry shared by the whole process
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * returns the counter with the given name, it is created on first use.
+     *
+     * @param name name of the counter, e.g. "adapter.placeholders"
+     * @return counter
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * returns the histogram of durations with the given name, values are recorded in nanoseconds.
+     *
+     * @param name name of the histogram, e.g. "storage.loadModules"
+     * @return histogram
+     */
+    public Histogram timer(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram(true));
+    }
+
+    /**
+     * returns the histogram of plain values with the given name, e.g. the number of modules per call.
+     *
+     * @param name name of the histogram
+     * @return histogram
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram(false));
+    }
+
+    /**
+     * resets all metrics to zero, e.g. before a measured run.
+     */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * writes all metrics sorted by name, one per line, in the style of a dumpsys section.
+     * durations are written in microseconds.
+     *
+     * @param prefix indentation of every line
+     * @param writer target
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Metrics:");
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            writer.println(prefix + "  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            if (count == 0) {
+                writer.println(prefix + "  " + entry.getKey() + ": count=0");
+                continue;
+            }
+            writer.println(prefix + "  " + entry.getKey() + (histogram.isTimer() ? " (µs)" : "")
+                    + ": count=" + count
+                    + " mean=" + histogram.format(histogram.getMean())
+                    + " p50=" + histogram.format(histogram.getPercentile(50))
+                    + " p90=" + histogram.format(histogram.getPercentile(90))
+                    + " p99=" + histogram.format(histogram.getPercentile(99))
+                    + " max=" + histogram.format(histogram.getMax()));
+        }
+        writer.flush();
+    }
+
+    /**
+     * counter that can be incremented from any thread.
+     */
+    public static class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    /**
+     * histogram of non-negative values with log-linear buckets like an HDR histogram: values below 16
+     * are counted exactly, every larger power of two is split into 16 buckets of equal width. the relative
+     * error of a percentile is therefore at most 1/16, whatever the magnitude of the values, and the
+     * buckets have a fixed size so recording never allocates.
+     * recording is safe from any thread, the accessors may see a value that is only partially recorded.
+     */
+    public static class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // values up to Long.MAX_VALUE have at most 63 significant bits
+        private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final boolean timer;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(boolean timer) {
+            this.timer = timer;
+        }
+
+        /**
+         * @return true if the values are durations in nanoseconds
+         */
+        public boolean isTimer() {
+            return timer;
+        }
+
+        /**
+         * records a value, negative values are recorded as 0.
+         *
+         * @param value value to record
+         */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * records the time elapsed since {@code startNanos}.
+         *
+         * @param startNanos start time from {@link System#nanoTime()}
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return exact mean of the recorded values, or 0 if there are none
+         */
+        public double getMean() {
+            long n = count.sum();
+            return n > 0 ? (double) sum.sum() / n : 0;
+        }
+
+        /**
+         * returns the value below or at which the given percentage of the recorded values lie.
+         * the result is the upper end of the bucket holding that value, but never more than the maximum.
+         *
+         * @param percentile percentage between 0 and 100
+         * @return value at the percentile, or 0 if no value was recorded
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            long[] counts = new long[BUCKET_COUNT];
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                counts[bucket] = buckets.get(bucket);
+                total += counts[bucket];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(bucketEnd(bucket), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        void reset() {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets.set(bucket, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+
+        private String format(double value) {
+            return timer ? String.format("%.1f", value / 1000) : String.format("%.0f", value);
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * @return largest value counted in the bucket
+         */
+        private static long bucketEnd(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long start = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return start + (1L << shift) - 1;
+        }
+    }
+}
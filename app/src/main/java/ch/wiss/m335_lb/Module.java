@@ -1,10 +1,16 @@
 package ch.wiss.m335_lb;
 
+import java.util.Objects;
+
 /**
  * data model representing a module with its number, title and optional grades.
  * handles validation and grade calculation according to business requirements.
  */
-public class Module {
+public class Module implements ModuleRow {
+    
+    // 64 bit fnv-1a offset basis and prime
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_MULTIPLIER = 0x100000001b3L;
     
     private Long id;
     private String modulnummer;
@@ -40,6 +46,13 @@ public class Module {
         this.note2 = note2;
     }
     
+    /**
+     * copy constructor, used by the storage so callers never share instances with the store.
+     */
+    public Module(Module other) {
+        this(other.id, other.modulnummer, other.modultitel, other.note1, other.note2);
+    }
+    
     // getters & setters
     public Long getId() {
         return id;
@@ -93,14 +106,24 @@ public class Module {
         return null;
     }
     
+    /**
+     * same as {@link #getDurchschnittsnote()} without boxing.
+     * 
+     * @return average of note1 and note2, or NaN if incomplete
+     */
+    @Override
+    public double getAverageGrade() {
+        return hasCompleteGrades() ? (note1 + note2) / 2.0 : Double.NaN;
+    }
+    
     /**
      * validates that required fields meet minimum length requirements.
      * 
      * @return true if modulnummer and modultitel have at least 4 chars
      */
     public boolean isValid() {
-        return modulnummer != null && modulnummer.trim().length() >= 4 &&
-               modultitel != null && modultitel.trim().length() >= 4;
+        return ModuleValidator.checkModulnummer(modulnummer) == null &&
+               ModuleValidator.checkModultitel(modultitel) == null;
     }
     
     /**
@@ -108,10 +131,92 @@ public class Module {
      * 
      * @return true if both note1 and note2 are not null
      */
+    @Override
     public boolean hasCompleteGrades() {
         return note1 != null && note2 != null;
     }
     
+    /**
+     * checks if at least one grade has been entered
+     * 
+     * @return true if note1 or note2 is not null
+     */
+    @Override
+    public boolean hasAnyGrade() {
+        return note1 != null || note2 != null;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Module)) {
+            return false;
+        }
+        Module other = (Module) o;
+        return Objects.equals(id, other.id) &&
+               Objects.equals(modulnummer, other.modulnummer) &&
+               Objects.equals(modultitel, other.modultitel) &&
+               Objects.equals(note1, other.note1) &&
+               Objects.equals(note2, other.note2);
+    }
+    
+    @Override
+    public int hashCode() {
+        // spelled out instead of Objects.hash, which allocates a varargs array per call
+        int result = Objects.hashCode(id);
+        result = 31 * result + Objects.hashCode(modulnummer);
+        result = 31 * result + Objects.hashCode(modultitel);
+        result = 31 * result + Objects.hashCode(note1);
+        result = 31 * result + Objects.hashCode(note2);
+        return result;
+    }
+    
+    /**
+     * 64 bit hash over all fields, used to tell whether a module changed without comparing it.
+     * unlike {@link #hashCode()} two different modules are practically never mapped to the same value.
+     * 
+     * @return content hash of the module
+     */
+    public long getContentHash() {
+        return contentHash(id != null ? id : 0, modulnummer, modultitel,
+                note1 != null ? note1 : Double.NaN, note2 != null ? note2 : Double.NaN);
+    }
+    
+    /**
+     * same as {@link #getContentHash()}, for stores that keep the fields in columns.
+     * 
+     * @param note1 first grade, NaN if missing
+     * @param note2 second grade, NaN if missing
+     */
+    static long contentHash(long id, String modulnummer, String modultitel, double note1, double note2) {
+        long hash = mix(HASH_SEED, id);
+        hash = mix(hash, modulnummer);
+        hash = mix(hash, modultitel);
+        hash = mix(hash, Double.doubleToLongBits(note1));
+        return mix(hash, Double.doubleToLongBits(note2));
+    }
+    
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * HASH_MULTIPLIER;
+        return hash ^ (hash >>> 32);
+    }
+    
+    /**
+     * mixes in the length first, so null, "" and the boundary between two strings are told apart.
+     */
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1);
+        }
+        hash = mix(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * HASH_MULTIPLIER;
+        }
+        return hash;
+    }
+    
     @Override
     public String toString() {
         return "Module{" +
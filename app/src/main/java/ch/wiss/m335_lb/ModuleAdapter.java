@@ -1,21 +1,39 @@
 package ch.wiss.m335_lb;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * RecyclerView adapter for displaying modules in a list
- * handles module data binding and click events.
+ * handles module data binding and click events, modules are loaded page by page through a {@link ModulePager}.
+ * the texts of the rows are formatted and measured in the background, binding only sets them.
+ * list changes are diffed by module id in the background and dispatched as fine-grained notifications.
  */
 public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleViewHolder> {
     
-    private List<Module> modules;
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+    // RecyclerView already traces these calls as "RV CreateView" and "RV OnBindView", only the timings are added
+    private static final Metrics.Histogram CREATE_TIME = Metrics.getInstance().timer("adapter.onCreateViewHolder");
+    private static final Metrics.Histogram BIND_TIME = Metrics.getInstance().timer("adapter.onBindViewHolder");
+    private static final Metrics.Counter PLACEHOLDERS = Metrics.getInstance().counter("adapter.placeholders");
+    
+    private final ModulePager pager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // incremented per submitted list, only the diff of the latest list is applied
+    private int diffGeneration;
+    // the texts are measured once the text settings of the row views are known
+    private PrecomputedTextMeasurer textMeasurer;
     private OnModuleClickListener clickListener;
     private OnModuleLongClickListener longClickListener;
     
@@ -34,10 +52,13 @@ public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleView
     }
     
     /**
-     * constructor initializing empty module list
+     * constructor initializing an empty list backed by the given pager
+     * 
+     * @param pager paged data source for the modules
      */
-    public ModuleAdapter() {
-        this.modules = new ArrayList<>();
+    public ModuleAdapter(ModulePager pager) {
+        this.pager = pager;
+        pager.setOnPageLoadedListener(this::notifyItemRangeChanged);
     }
     
     /**
@@ -59,32 +80,191 @@ public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleView
     }
     
     /**
-     * updates the module list and refreshes the display.
-     * 
-     * @param newModules new list of modules
+     * shows the rows of a preview before the first id list has been loaded.
+     *
+     * @param preview first rows of the list
      */
-    public void setModules(List<Module> newModules) {
-        this.modules = newModules;
+    public void showPreview(ModulePreview preview) {
+        pager.setPreview(preview);
         notifyDataSetChanged();
     }
     
+    /**
+     * @return ids of the modules shown, in display order
+     */
+    public ModuleIdList getIdList() {
+        return pager.getIdList();
+    }
+    
+    /**
+     * updates the module list. the difference to the current list is calculated in the background,
+     * only inserted, removed, moved and changed rows are updated.
+     * 
+     * @param newIdList ids of all modules in display order
+     * @param onApplied called on the main thread once the new list is shown, may be null
+     */
+    public void submitIdList(ModuleIdList newIdList, Runnable onApplied) {
+        ModuleIdList oldIdList = pager.getIdList();
+        int generation = ++diffGeneration;
+        
+        diffExecutor.execute(() -> {
+            // the first list after a start or a preview, and a module added at the end, only append rows,
+            // which needs no diff (a diff of mostly inserted rows grows with the square of their number)
+            boolean appended = startsWith(newIdList, oldIdList);
+            DiffUtil.DiffResult diff = appended ? null
+                    : DiffUtil.calculateDiff(new IdListDiffCallback(oldIdList, newIdList));
+            mainHandler.post(() -> {
+                if (generation != diffGeneration) {
+                    return;
+                }
+                pager.setIdList(newIdList);
+                if (appended) {
+                    dispatchAppend(oldIdList, newIdList);
+                } else {
+                    diff.dispatchUpdatesTo(this);
+                }
+                if (onApplied != null) {
+                    onApplied.run();
+                }
+            });
+        });
+    }
+    
     @NonNull
     @Override
     public ModuleViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_module, parent, false);
-        return new ModuleViewHolder(view);
+        ModuleViewHolder holder = new ModuleViewHolder(view);
+        CREATE_TIME.recordSince(start);
+        return holder;
+    }
+    
+    /**
+     * takes the text settings for the measured texts from the first attached row, only attached views
+     * have resolved their text direction. every row reads its settings once per attach, not per bind.
+     */
+    @Override
+    public void onViewAttachedToWindow(@NonNull ModuleViewHolder holder) {
+        holder.readTextParams(textMeasurer);
+        if (textMeasurer == null) {
+            textMeasurer = new PrecomputedTextMeasurer(holder);
+            pager.setTextMeasurer(textMeasurer);
+        }
     }
     
     @Override
     public void onBindViewHolder(@NonNull ModuleViewHolder holder, int position) {
-        Module module = modules.get(position);
-        holder.bind(module);
+        long start = System.nanoTime();
+        ModuleDisplayRow row = pager.get(position);
+        if (row != null) {
+            holder.bind(row);
+        } else {
+            holder.bindPlaceholder();
+            PLACEHOLDERS.increment();
+        }
+        BIND_TIME.recordSince(start);
     }
     
     @Override
     public int getItemCount() {
-        return modules.size();
+        return pager.size();
+    }
+    
+    /**
+     * @return true if {@code list} begins with the ids of {@code prefix}
+     */
+    private static boolean startsWith(ModuleIdList list, ModuleIdList prefix) {
+        if (list.size() < prefix.size()) {
+            return false;
+        }
+        for (int position = 0; position < prefix.size(); position++) {
+            if (list.getId(position) != prefix.getId(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * notifies the rows of the old list whose content changed and the rows appended after them.
+     */
+    private void dispatchAppend(ModuleIdList oldIdList, ModuleIdList newIdList) {
+        for (int position = 0; position < oldIdList.size(); position++) {
+            if (oldIdList.getContentHash(position) != newIdList.getContentHash(position)) {
+                notifyItemChanged(position);
+            }
+        }
+        if (newIdList.size() > oldIdList.size()) {
+            notifyItemRangeInserted(oldIdList.size(), newIdList.size() - oldIdList.size());
+        }
+    }
+    
+    /**
+     * compares two id lists: same id means same item, same content hash means unchanged content.
+     */
+    private static class IdListDiffCallback extends DiffUtil.Callback {
+        
+        private final ModuleIdList oldList;
+        private final ModuleIdList newList;
+        
+        IdListDiffCallback(ModuleIdList oldList, ModuleIdList newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+        
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+        
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+        
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldList.getId(oldPosition) == newList.getId(newPosition);
+        }
+        
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldList.getContentHash(oldPosition) == newList.getContentHash(newPosition);
+        }
+    }
+    
+    /**
+     * measures the texts with the text settings of the views of a row, so the views do not have to
+     * while binding. the measured texts only fit views with the same settings, i.e. rows of this layout.
+     */
+    private static class PrecomputedTextMeasurer implements ModuleDisplayRow.TextMeasurer {
+        
+        private final PrecomputedTextCompat.Params numberParams;
+        private final PrecomputedTextCompat.Params titleParams;
+        private final PrecomputedTextCompat.Params gradeInfoParams;
+        
+        PrecomputedTextMeasurer(ModuleViewHolder holder) {
+            numberParams = holder.numberParams;
+            titleParams = holder.titleParams;
+            gradeInfoParams = holder.gradeInfoParams;
+        }
+        
+        @Override
+        public CharSequence measureNumber(String text) {
+            return PrecomputedTextCompat.create(text, numberParams);
+        }
+        
+        @Override
+        public CharSequence measureTitle(String text) {
+            return PrecomputedTextCompat.create(text, titleParams);
+        }
+        
+        @Override
+        public CharSequence measureGradeInfo(String text) {
+            return PrecomputedTextCompat.create(text, gradeInfoParams);
+        }
     }
     
     /**
@@ -96,6 +276,9 @@ public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleView
         private final TextView textViewModulNumber;
         private final TextView textViewModulTitle;
         private final TextView textViewGradeInfo;
+        private PrecomputedTextCompat.Params numberParams;
+        private PrecomputedTextCompat.Params titleParams;
+        private PrecomputedTextCompat.Params gradeInfoParams;
         
         public ModuleViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -105,18 +288,18 @@ public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleView
             
             itemView.setOnClickListener(v -> {
                 if (clickListener != null) {
-                    int position = getAdapterPosition();
-                    if (position != RecyclerView.NO_POSITION) {
-                        clickListener.onModuleClick(modules.get(position));
+                    Module module = getModule();
+                    if (module != null) {
+                        clickListener.onModuleClick(module);
                     }
                 }
             });
             
             itemView.setOnLongClickListener(v -> {
                 if (longClickListener != null) {
-                    int position = getAdapterPosition();
-                    if (position != RecyclerView.NO_POSITION) {
-                        longClickListener.onModuleLongClick(modules.get(position));
+                    Module module = getModule();
+                    if (module != null) {
+                        longClickListener.onModuleLongClick(module);
                         return true;
                     }
                 }
@@ -125,22 +308,65 @@ public class ModuleAdapter extends RecyclerView.Adapter<ModuleAdapter.ModuleView
         }
         
         /**
-         * binds module data to the view elements.
+         * @return module shown by this holder, or null if it is not loaded yet
+         */
+        private Module getModule() {
+            int position = getAdapterPosition();
+            ModuleDisplayRow row = position != RecyclerView.NO_POSITION ? pager.get(position) : null;
+            return row != null ? row.getModule() : null;
+        }
+        
+        /**
+         * shows an empty row while the page of this position is loading.
+         */
+        public void bindPlaceholder() {
+            textViewModulNumber.setText("");
+            textViewModulTitle.setText("…");
+            textViewGradeInfo.setText("");
+        }
+        
+        /**
+         * binds the prepared texts of a row to the view elements, nothing is formatted here.
          * 
-         * @param module module to display
+         * @param row row to display
          */
-        public void bind(Module module) {
-            textViewModulNumber.setText(module.getModulnummer());
-            textViewModulTitle.setText(module.getModultitel());
-            
-            // Display grade information
-            if (module.hasCompleteGrades()) {
-                Double average = module.getDurchschnittsnote();
-                textViewGradeInfo.setText(String.format("Durchschnitt: %.1f", average));
-            } else if (module.getNote1() != null || module.getNote2() != null) {
-                textViewGradeInfo.setText("Noten: noch nicht komplett");
+        public void bind(ModuleDisplayRow row) {
+            setText(textViewModulNumber, row.getNumberText(), numberParams);
+            setText(textViewModulTitle, row.getTitleText(), titleParams);
+            setText(textViewGradeInfo, row.getGradeInfoText(), gradeInfoParams);
+        }
+        
+        /**
+         * reads the text settings of the views. settings equal to the ones of the measurer are replaced by
+         * the measurer's own, so binding only has to compare references.
+         * 
+         * @param measurer measurer of the rows, null before the first row was attached
+         */
+        void readTextParams(PrecomputedTextMeasurer measurer) {
+            numberParams = TextViewCompat.getTextMetricsParams(textViewModulNumber);
+            titleParams = TextViewCompat.getTextMetricsParams(textViewModulTitle);
+            gradeInfoParams = TextViewCompat.getTextMetricsParams(textViewGradeInfo);
+            if (measurer != null) {
+                numberParams = shared(numberParams, measurer.numberParams);
+                titleParams = shared(titleParams, measurer.titleParams);
+                gradeInfoParams = shared(gradeInfoParams, measurer.gradeInfoParams);
+            }
+        }
+        
+        private PrecomputedTextCompat.Params shared(PrecomputedTextCompat.Params params,
+                                                    PrecomputedTextCompat.Params measured) {
+            return params.equals(measured) ? measured : params;
+        }
+        
+        /**
+         * a measured text is only accepted by a view with the same text settings, e.g. not after the
+         * text direction changed. it is shown as plain text otherwise.
+         */
+        private void setText(TextView view, CharSequence text, PrecomputedTextCompat.Params params) {
+            if (text instanceof PrecomputedTextCompat && ((PrecomputedTextCompat) text).getParams() == params) {
+                TextViewCompat.setPrecomputedText(view, (PrecomputedTextCompat) text);
             } else {
-                textViewGradeInfo.setText("Noch keine Noten eingetragen");
+                view.setText(text);
             }
         }
     }
@@ -0,0 +1,445 @@
+package ch.wiss.m335_lb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * compact binary record format for module snapshots.
+ *
+ * <pre>
+ * header:  int magic "M335" | byte schema version | 3 bytes reserved | int record count
+ *          | double grade sum | int grade count   (schema 2 and later)
+ *          | int crc32 of the header before it    (schema 3)
+ * record:  long id | byte presence mask | [double note1] | [double note2]
+ *          | [u16 length + utf-8 modulnummer] | [u16 length + utf-8 modultitel]
+ * </pre>
+ *
+ * fields in brackets are only written if their bit is set in the presence mask. since schema 3 every
+ * record is framed as {@code int length | record | int crc32 of the record}, so a damaged record is
+ * detected and skipped while all intact records can still be read.
+ */
+public class ModuleBinaryCodec {
+
+    public static final int MAGIC = 0x4D333335; // "M335"
+    public static final byte SCHEMA_VERSION = 3;
+    public static final int HEADER_SIZE = 28;
+
+    // schema 1 had no grade aggregate in the header, schema 2 no checksums
+    private static final byte SCHEMA_VERSION_WITHOUT_AGGREGATE = 1;
+    private static final byte SCHEMA_VERSION_WITHOUT_CHECKSUMS = 2;
+    private static final int CHECKSUMMED_HEADER_BYTES = 24;
+
+    // smallest record: id and presence mask, largest: both grades and two strings of maximum length
+    private static final int MIN_RECORD_SIZE = 9;
+    private static final int MAX_RECORD_SIZE = MIN_RECORD_SIZE + 16 + 2 * (2 + 0xFFFF);
+    // length before and checksum after each record
+    private static final int FRAME_SIZE = 8;
+
+    private static final int HAS_NOTE1 = 1;
+    private static final int HAS_NOTE2 = 1 << 1;
+    private static final int HAS_MODULNUMMER = 1 << 2;
+    private static final int HAS_MODULTITEL = 1 << 3;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private ModuleBinaryCodec() {
+    }
+
+    /**
+     * writes a snapshot in the current schema, every record with its own checksum.
+     */
+    public static class RecordWriter {
+
+        private final DataOutputStream out;
+        private final RecordBuffer recordBytes = new RecordBuffer();
+        private final DataOutputStream record = new DataOutputStream(recordBytes);
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * constructor
+         *
+         * @param out stream to write to
+         */
+        public RecordWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * writes the fixed header, must be followed by exactly {@code count} records.
+         *
+         * @param count number of records that follow
+         * @param gradeSum sum of the averages of all records with complete grades
+         * @param gradeCount number of records with complete grades
+         */
+        public void writeHeader(int count, double gradeSum, int gradeCount) throws IOException {
+            recordBytes.reset();
+            record.writeInt(MAGIC);
+            record.writeByte(SCHEMA_VERSION);
+            record.write(new byte[3]);
+            record.writeInt(count);
+            record.writeDouble(gradeSum);
+            record.writeInt(gradeCount);
+            crc.reset();
+            crc.update(recordBytes.buffer(), 0, recordBytes.size());
+            recordBytes.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+
+        /**
+         * writes one module record.
+         *
+         * @param module module to write, must have an id
+         */
+        public void write(Module module) throws IOException {
+            write(module.getId(), module.getModulnummer(), module.getModultitel(),
+                    ModuleTable.toPrimitive(module.getNote1()), ModuleTable.toPrimitive(module.getNote2()));
+        }
+
+        /**
+         * writes one row of a {@link ModuleTable}.
+         *
+         * @param table table holding the row
+         * @param row row index
+         */
+        public void write(ModuleTable table, int row) throws IOException {
+            write(table.getId(row), table.getModulnummer(row), table.getModultitel(row),
+                    table.getNote1(row), table.getNote2(row));
+        }
+
+        /**
+         * writes one framed record from its field values, NaN grades are left out.
+         */
+        private void write(long id, String modulnummerValue, String modultitelValue,
+                           double note1, double note2) throws IOException {
+            byte[] modulnummer = encode(modulnummerValue);
+            byte[] modultitel = encode(modultitelValue);
+
+            int mask = 0;
+            if (!Double.isNaN(note1)) {
+                mask |= HAS_NOTE1;
+            }
+            if (!Double.isNaN(note2)) {
+                mask |= HAS_NOTE2;
+            }
+            if (modulnummer != null) {
+                mask |= HAS_MODULNUMMER;
+            }
+            if (modultitel != null) {
+                mask |= HAS_MODULTITEL;
+            }
+
+            recordBytes.reset();
+            record.writeLong(id);
+            record.writeByte(mask);
+            if (!Double.isNaN(note1)) {
+                record.writeDouble(note1);
+            }
+            if (!Double.isNaN(note2)) {
+                record.writeDouble(note2);
+            }
+            writeBytes(record, modulnummer);
+            writeBytes(record, modultitel);
+
+            crc.reset();
+            crc.update(recordBytes.buffer(), 0, recordBytes.size());
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("string too long for binary record: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes != null) {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * byte array stream that gives access to its buffer, so the checksum needs no copy.
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+
+        RecordBuffer() {
+            super(128);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * maps a snapshot file read-only into memory.
+     *
+     * @param file snapshot file
+     * @return buffer positioned at the start of the file
+     */
+    public static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * reads records one at a time from a (memory mapped) buffer.
+     * records of schema 3 are checked against their checksum, damaged ones are skipped by searching
+     * for the next intact frame. {@link #isIntact()} tells afterwards whether anything was skipped.
+     */
+    public static class RecordReader {
+
+        private final ByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+        private final boolean checksummed;
+        private int count;
+        private boolean hasAggregate;
+        private double gradeSum;
+        private int gradeCount;
+        private int read;
+        private boolean damaged;
+        private byte[] scratch = new byte[64];
+
+        // fields of the record read last
+        private long id;
+        private String modulnummer;
+        private String modultitel;
+        private double note1;
+        private double note2;
+
+        /**
+         * reads and checks the header. a damaged header of the current schema does not fail, the records
+         * are then read without record count and aggregate.
+         *
+         * @param buffer buffer positioned at the header
+         * @throws IOException if the header of an older schema is invalid
+         */
+        public RecordReader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            int start = buffer.position();
+            int magic;
+            byte version;
+            try {
+                magic = buffer.getInt();
+                version = buffer.get();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("truncated snapshot header");
+            }
+
+            if (magic == MAGIC && (version == SCHEMA_VERSION_WITHOUT_AGGREGATE
+                    || version == SCHEMA_VERSION_WITHOUT_CHECKSUMS)) {
+                checksummed = false;
+                try {
+                    buffer.position(buffer.position() + 3);
+                    count = buffer.getInt();
+                    hasAggregate = version == SCHEMA_VERSION_WITHOUT_CHECKSUMS;
+                    if (hasAggregate) {
+                        gradeSum = buffer.getDouble();
+                        gradeCount = buffer.getInt();
+                    }
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    throw new IOException("truncated snapshot header");
+                }
+                return;
+            }
+
+            // the current schema, unless the header itself is damaged
+            checksummed = true;
+            count = -1;
+            if (buffer.limit() - start < HEADER_SIZE) {
+                damaged = true;
+                buffer.position(Math.min(buffer.limit(), start + HEADER_SIZE));
+                return;
+            }
+            boolean headerIntact = checksumMatches(start, CHECKSUMMED_HEADER_BYTES,
+                    buffer.getInt(start + CHECKSUMMED_HEADER_BYTES));
+            if (headerIntact && magic == MAGIC && version == SCHEMA_VERSION) {
+                buffer.position(start + 8);
+                count = buffer.getInt();
+                gradeSum = buffer.getDouble();
+                gradeCount = buffer.getInt();
+                hasAggregate = true;
+            } else {
+                damaged = true;
+            }
+            buffer.position(start + HEADER_SIZE);
+        }
+
+        /**
+         * @return number of records announced in the header, -1 if the header is damaged
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * @return true if the header contains a valid grade aggregate (schema 2 and later)
+         */
+        public boolean hasAggregate() {
+            return hasAggregate;
+        }
+
+        /**
+         * @return sum of the averages of all records with complete grades
+         */
+        public double getGradeSum() {
+            return gradeSum;
+        }
+
+        /**
+         * @return number of records with complete grades
+         */
+        public int getGradeCount() {
+            return gradeCount;
+        }
+
+        /**
+         * @return false if damaged data was skipped or records are missing, only final after the last record
+         */
+        public boolean isIntact() {
+            return !damaged && read == count;
+        }
+
+        /**
+         * reads the next record.
+         *
+         * @return the module, or null after the last record
+         * @throws IOException if a record of an older schema is truncated
+         */
+        public Module next() throws IOException {
+            if (!readRecord()) {
+                return null;
+            }
+            return new Module(id, modulnummer, modultitel,
+                    Double.isNaN(note1) ? null : note1, Double.isNaN(note2) ? null : note2);
+        }
+
+        /**
+         * reads the next record straight into a table without creating a {@link Module}.
+         *
+         * @param table table to put the record into
+         * @return row index of the record, or -1 after the last record
+         * @throws IOException if a record of an older schema is truncated
+         */
+        public int readInto(ModuleTable table) throws IOException {
+            if (!readRecord()) {
+                return -1;
+            }
+            return table.put(id, modulnummer, modultitel, note1, note2);
+        }
+
+        private boolean readRecord() throws IOException {
+            if (!checksummed) {
+                if (read == count) {
+                    return false;
+                }
+                try {
+                    readFields();
+                } catch (BufferUnderflowException e) {
+                    throw new IOException("truncated record " + read + " of " + count);
+                }
+                read++;
+                return true;
+            }
+
+            int limit = buffer.limit();
+            while (limit - buffer.position() >= FRAME_SIZE + MIN_RECORD_SIZE) {
+                int start = buffer.position();
+                if (readFramedRecord(start, limit)) {
+                    read++;
+                    return true;
+                }
+                // not an intact record at this position, search the next one byte by byte
+                damaged = true;
+                buffer.position(start + 1);
+            }
+            if (buffer.hasRemaining()) {
+                damaged = true;
+            }
+            return false;
+        }
+
+        /**
+         * reads the framed record at the given position if its length and checksum are valid.
+         *
+         * @return true if the record was read, the buffer is then positioned after it
+         */
+        private boolean readFramedRecord(int start, int limit) {
+            int length = buffer.getInt(start);
+            if (length < MIN_RECORD_SIZE || length > MAX_RECORD_SIZE || length > limit - start - FRAME_SIZE) {
+                return false;
+            }
+            int recordStart = start + 4;
+            int recordEnd = recordStart + length;
+            if (!checksumMatches(recordStart, length, buffer.getInt(recordEnd))) {
+                return false;
+            }
+
+            // fields must not reach beyond the record, even if the checksum matched by chance
+            buffer.limit(recordEnd);
+            buffer.position(recordStart);
+            try {
+                readFields();
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return false;
+            } finally {
+                buffer.limit(limit);
+            }
+            buffer.position(recordEnd + 4);
+            return true;
+        }
+
+        private boolean checksumMatches(int from, int length, int expected) {
+            int position = buffer.position();
+            int limit = buffer.limit();
+            buffer.limit(from + length);
+            buffer.position(from);
+            crc.reset();
+            crc.update(buffer);
+            buffer.limit(limit);
+            buffer.position(position);
+            return (int) crc.getValue() == expected;
+        }
+
+        private void readFields() {
+            id = buffer.getLong();
+            int mask = buffer.get();
+            note1 = (mask & HAS_NOTE1) != 0 ? buffer.getDouble() : Double.NaN;
+            note2 = (mask & HAS_NOTE2) != 0 ? buffer.getDouble() : Double.NaN;
+            modulnummer = (mask & HAS_MODULNUMMER) != 0 ? readString() : null;
+            modultitel = (mask & HAS_MODULTITEL) != 0 ? readString() : null;
+        }
+
+        private String readString() {
+            int length = buffer.getShort() & 0xFFFF;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ch.wiss.m335_lb;
+
+/**
+ * a module together with the texts of its list row, prepared on a background thread.
+ * binding a row then only hands the finished texts to the views, without formatting anything.
+ * the texts may be measured ahead of time for their views, see {@link TextMeasurer}.
+ */
+public class ModuleDisplayRow {
+
+    /**
+     * interface for measuring the texts of a row for the views that show them, called on a background thread
+     */
+    public interface TextMeasurer {
+        CharSequence measureNumber(String text);
+
+        CharSequence measureTitle(String text);
+
+        CharSequence measureGradeInfo(String text);
+    }
+
+    /**
+     * keeps the texts as plain strings, e.g. while the views are not known yet
+     */
+    public static final TextMeasurer PLAIN = new TextMeasurer() {
+        @Override
+        public CharSequence measureNumber(String text) {
+            return text;
+        }
+
+        @Override
+        public CharSequence measureTitle(String text) {
+            return text;
+        }
+
+        @Override
+        public CharSequence measureGradeInfo(String text) {
+            return text;
+        }
+    };
+
+    private final Module module;
+    private final long contentHash;
+    private final CharSequence numberText;
+    private final CharSequence titleText;
+    private final CharSequence gradeInfoText;
+
+    /**
+     * constructor, formats the texts of the module.
+     *
+     * @param module module of the row, must not be changed afterwards
+     * @param measurer measures the texts for their views
+     */
+    public ModuleDisplayRow(Module module, TextMeasurer measurer) {
+        this.module = module;
+        this.contentHash = module.getContentHash();
+        this.numberText = measurer.measureNumber(nonNull(module.getModulnummer()));
+        this.titleText = measurer.measureTitle(nonNull(module.getModultitel()));
+        this.gradeInfoText = measurer.measureGradeInfo(getGradeInfo(module));
+    }
+
+    /**
+     * returns the grade line of a list row.
+     *
+     * @param module module to describe
+     * @return average with one decimal, or a hint which grades are missing
+     */
+    public static String getGradeInfo(ModuleRow module) {
+        if (module.hasCompleteGrades()) {
+            return String.format("Durchschnitt: %.1f", module.getAverageGrade());
+        } else if (module.hasAnyGrade()) {
+            return "Noten: noch nicht komplett";
+        }
+        return "Noch keine Noten eingetragen";
+    }
+
+    private static String nonNull(String text) {
+        return text != null ? text : "";
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * @return content hash of the module, compared with the id list to find outdated rows
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public CharSequence getNumberText() {
+        return numberText;
+    }
+
+    public CharSequence getTitleText() {
+        return titleText;
+    }
+
+    public CharSequence getGradeInfoText() {
+        return gradeInfoText;
+    }
+}
@@ -0,0 +1,192 @@
+package ch.wiss.m335_lb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * streaming export of modules to csv or json.
+ * the modules are loaded page by page and written to the stream one at a time, so apart from the id
+ * array only one page is held in memory, no matter how many modules are exported. an export can be
+ * cancelled from any thread, it then stops after the current module.
+ *
+ * <p>the csv uses {@code ;} as separator and a decimal comma, like spreadsheets with german settings
+ * expect it. both formats include the average and can be read again by {@link ModuleImporter}.</p>
+ */
+public class ModuleExporter {
+
+    /**
+     * file formats of an export
+     */
+    public enum Format {
+        CSV("text/csv", "module.csv"),
+        JSON("application/json", "module.json");
+
+        private final String mimeType;
+        private final String fileName;
+
+        Format(String mimeType, String fileName) {
+            this.mimeType = mimeType;
+            this.fileName = fileName;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return suggested name of the exported file
+         */
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    /**
+     * storage the exported modules are read from
+     */
+    public interface Source {
+        /**
+         * @return copies of the modules with the given ids, null for ids that no longer exist
+         */
+        List<Module> load(long[] ids, int from, int to);
+    }
+
+    /**
+     * interface for getting notified about the progress of an export
+     */
+    public interface ProgressListener {
+        void onProgress(int exported, int total);
+    }
+
+    public static final int PAGE_SIZE = 256;
+
+    private static final char SEPARATOR = ';';
+    private static final String CSV_HEADER = "modulnummer;modultitel;note1;note2;durchschnitt";
+
+    private final Source source;
+    private final Format format;
+    private final ProgressListener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * constructor
+     *
+     * @param source storage to read from
+     * @param format format to write
+     * @param listener notified after every page, may be null
+     */
+    public ModuleExporter(Source source, Format format, ProgressListener listener) {
+        this.source = source;
+        this.format = format;
+        this.listener = listener;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * stops a running export, may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * writes the modules with the given ids. modules deleted while the export runs are left out.
+     * the writer is flushed but not closed.
+     *
+     * @param ids ids of the modules in export order
+     * @param out stream to write to
+     * @return number of modules written, or -1 if the export was cancelled
+     * @throws IOException if writing fails
+     */
+    public int exportTo(long[] ids, Writer out) throws IOException {
+        int exported = 0;
+        if (format == Format.CSV) {
+            // byte order mark, so spreadsheets detect utf-8
+            out.write('﻿');
+            out.write(CSV_HEADER);
+            out.write("\r\n");
+        } else {
+            out.write('[');
+        }
+
+        for (int from = 0; from < ids.length; from += PAGE_SIZE) {
+            int to = Math.min(from + PAGE_SIZE, ids.length);
+            for (Module module : source.load(ids, from, to)) {
+                if (cancelled) {
+                    return -1;
+                }
+                if (module == null) {
+                    continue;
+                }
+                if (format == Format.CSV) {
+                    writeCsv(out, module);
+                } else {
+                    if (exported > 0) {
+                        out.write(',');
+                    }
+                    out.write('\n');
+                    ModuleJsonCodec.writeWithAverage(out, module);
+                }
+                exported++;
+            }
+            if (listener != null) {
+                listener.onProgress(to, ids.length);
+            }
+        }
+
+        if (format == Format.JSON) {
+            out.write("\n]\n");
+        }
+        out.flush();
+        return exported;
+    }
+
+    private static void writeCsv(Writer out, Module module) throws IOException {
+        writeCsvField(out, module.getModulnummer());
+        out.write(SEPARATOR);
+        writeCsvField(out, module.getModultitel());
+        out.write(SEPARATOR);
+        writeCsvNumber(out, module.getNote1());
+        out.write(SEPARATOR);
+        writeCsvNumber(out, module.getNote2());
+        out.write(SEPARATOR);
+        writeCsvNumber(out, module.getDurchschnittsnote());
+        out.write("\r\n");
+    }
+
+    /**
+     * writes a text field, quoted if it contains the separator, a quote or a line break.
+     */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == SEPARATOR || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static void writeCsvNumber(Writer out, Double value) throws IOException {
+        if (value != null) {
+            out.write(String.format(Locale.GERMAN, "%.2f", value));
+        }
+    }
+}
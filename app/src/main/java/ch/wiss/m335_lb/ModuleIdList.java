@@ -0,0 +1,47 @@
+package ch.wiss.m335_lb;
+
+/**
+ * ids of all modules in display order together with a content hash per row.
+ * small enough to keep for very large lists and enough to diff two versions of the list
+ * without loading any module. instances are immutable.
+ */
+public class ModuleIdList {
+
+    public static final ModuleIdList EMPTY = new ModuleIdList(new long[0], new long[0]);
+
+    private final long[] ids;
+    private final long[] contentHashes;
+
+    /**
+     * constructor, takes ownership of the arrays.
+     *
+     * @param ids module ids in display order
+     * @param contentHashes {@link Module#getContentHash()} of the module at the same position
+     */
+    public ModuleIdList(long[] ids, long[] contentHashes) {
+        if (ids.length != contentHashes.length) {
+            throw new IllegalArgumentException("ids and hashes differ in length");
+        }
+        this.ids = ids;
+        this.contentHashes = contentHashes;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int position) {
+        return ids[position];
+    }
+
+    public long getContentHash(int position) {
+        return contentHashes[position];
+    }
+
+    /**
+     * @return the id array itself, must not be modified
+     */
+    long[] ids() {
+        return ids;
+    }
+}
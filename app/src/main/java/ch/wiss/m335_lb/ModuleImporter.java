@@ -0,0 +1,421 @@
+package ch.wiss.m335_lb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * streaming bulk import of modules from csv or json.
+ * rows are read one at a time, checked with {@link ModuleValidator} and saved in batches, each batch gets
+ * a block of ids with a single allocation. invalid rows are collected in the {@link Report} instead of
+ * aborting the import. ids contained in the file are ignored, imported modules are always added as new.
+ *
+ * <p>csv: {@code ;} or {@code ,} separated, optional header row naming the columns modulnummer, modultitel,
+ * note1 and note2 (otherwise in this order), fields may be quoted. with {@code ;} as separator grades may
+ * use a decimal comma. json: an array of module objects or one object per line, as written by
+ * {@link ModuleJsonCodec}.</p>
+ */
+public class ModuleImporter {
+
+    /**
+     * storage the imported modules are written to
+     */
+    public interface Target {
+        /**
+         * @return first id of a block of {@code count} new ids
+         */
+        long allocateIds(int count);
+
+        /**
+         * @return true if the batch was committed
+         */
+        boolean saveBatch(List<Module> batch);
+    }
+
+    /**
+     * interface for getting notified about the progress of an import
+     */
+    public interface ProgressListener {
+        void onProgress(int imported, int rejected);
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    // only the first errors are kept, a broken file should not fill the memory with messages
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final String[] COLUMNS = {"modulnummer", "modultitel", "note1", "note2"};
+
+    private final Target target;
+    private final ProgressListener listener;
+    private final int batchSize;
+
+    private final List<Module> batch = new ArrayList<>();
+    private Report report;
+
+    /**
+     * constructor using the default batch size
+     *
+     * @param target storage to write to
+     * @param listener notified after every committed batch, may be null
+     */
+    public ModuleImporter(Target target, ProgressListener listener) {
+        this(target, listener, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * constructor
+     *
+     * @param target storage to write to
+     * @param listener notified after every committed batch, may be null
+     * @param batchSize number of modules per transaction
+     */
+    public ModuleImporter(Target target, ProgressListener listener, int batchSize) {
+        this.target = target;
+        this.listener = listener;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * reads and imports the whole stream. the rows read before a read error are still saved and stay imported.
+     *
+     * @param in stream to import, the format is detected from its first character
+     * @return report of the import
+     */
+    public Report importFrom(Reader in) {
+        report = new Report();
+        batch.clear();
+        try {
+            BufferedReader reader = new BufferedReader(in);
+            if (isJson(reader)) {
+                importJson(reader);
+            } else {
+                importCsv(reader);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            report.failure = "Datei konnte nicht gelesen werden: " + e.getMessage();
+        }
+        flushBatch();
+        return report;
+    }
+
+    /**
+     * peeks at the first character that is not whitespace or a byte order mark.
+     */
+    private static boolean isJson(BufferedReader reader) throws IOException {
+        while (true) {
+            reader.mark(1);
+            int c = reader.read();
+            if (c == -1) {
+                return false;
+            }
+            if (!Character.isWhitespace(c) && c != '﻿') {
+                reader.reset();
+                return c == '[' || c == '{';
+            }
+        }
+    }
+
+    private void importJson(BufferedReader reader) throws IOException {
+        ModuleJsonCodec.ModuleReader moduleReader = new ModuleJsonCodec.ModuleReader(reader, false, false);
+        int index = 0;
+        while (true) {
+            index++;
+            Module module;
+            try {
+                module = moduleReader.next();
+            } catch (IOException e) {
+                // without line structure there is no safe point to continue from
+                reject("Eintrag " + index, "ungültiges JSON (" + e.getMessage() + ")");
+                return;
+            }
+            if (module == null) {
+                return;
+            }
+            module.setId(null);
+            accept("Eintrag " + index, module);
+        }
+    }
+
+    private void importCsv(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        // maps column position to field index in COLUMNS
+        int[] columns = {0, 1, 2, 3};
+        List<String> fields;
+        boolean first = true;
+        while ((fields = csv.next()) != null) {
+            String location = "Zeile " + csv.getLine();
+            if (first) {
+                first = false;
+                int[] header = parseHeader(fields);
+                if (header != null) {
+                    columns = header;
+                    continue;
+                }
+            }
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                continue;
+            }
+
+            String[] values = new String[COLUMNS.length];
+            for (int i = 0; i < fields.size() && i < columns.length; i++) {
+                if (columns[i] >= 0) {
+                    values[columns[i]] = fields.get(i).trim();
+                }
+            }
+            if (csv.getSeparator() == ';') {
+                values[2] = decimalPoint(values[2]);
+                values[3] = decimalPoint(values[3]);
+            }
+
+            String error = firstError(ModuleValidator.checkNote(values[2]), ModuleValidator.checkNote(values[3]));
+            if (error != null) {
+                reject(location, error);
+                continue;
+            }
+            accept(location, new Module(null, values[0], values[1],
+                    ModuleValidator.parseNote(values[2]), ModuleValidator.parseNote(values[3])));
+        }
+    }
+
+    /**
+     * @return column mapping if the row is a header row, otherwise null
+     */
+    private static int[] parseHeader(List<String> fields) {
+        int[] columns = new int[fields.size()];
+        boolean isHeader = false;
+        for (int i = 0; i < fields.size(); i++) {
+            columns[i] = -1;
+            String name = ModuleSearchIndex.fold(fields.get(i).trim()).replace(" ", "");
+            for (int column = 0; column < COLUMNS.length; column++) {
+                if (COLUMNS[column].equals(name)) {
+                    columns[i] = column;
+                    isHeader = true;
+                }
+            }
+        }
+        return isHeader ? columns : null;
+    }
+
+    private static String decimalPoint(String value) {
+        return value != null ? value.replace(',', '.') : null;
+    }
+
+    private static String firstError(String... errors) {
+        for (String error : errors) {
+            if (error != null) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private void accept(String location, Module module) {
+        if (module.getModulnummer() != null) {
+            module.setModulnummer(module.getModulnummer().trim());
+        }
+        if (module.getModultitel() != null) {
+            module.setModultitel(module.getModultitel().trim());
+        }
+        String error = ModuleValidator.check(module);
+        if (error != null) {
+            reject(location, error);
+            return;
+        }
+
+        batch.add(module);
+        if (batch.size() >= batchSize) {
+            flushBatch();
+        }
+    }
+
+    private void reject(String location, String error) {
+        report.rejected++;
+        if (report.errors.size() < MAX_REPORTED_ERRORS) {
+            report.errors.add(location + ": " + error);
+        }
+    }
+
+    /**
+     * gives the pending modules one block of ids and saves them as one transaction.
+     */
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long firstId = target.allocateIds(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setId(firstId + i);
+        }
+
+        if (target.saveBatch(batch)) {
+            report.imported += batch.size();
+        } else {
+            report.rejected += batch.size();
+            if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                report.errors.add(String.format(Locale.ROOT, "%d Module konnten nicht gespeichert werden", batch.size()));
+            }
+        }
+        batch.clear();
+        if (listener != null) {
+            listener.onProgress(report.imported, report.rejected);
+        }
+    }
+
+    /**
+     * result of an import
+     */
+    public static class Report {
+
+        private int imported;
+        private int rejected;
+        private final List<String> errors = new ArrayList<>();
+        private String failure;
+
+        /**
+         * creates the report of an import that could not even be started.
+         *
+         * @param failure reason, e.g. the file could not be opened
+         * @return report without imported modules
+         */
+        public static Report failed(String failure) {
+            Report report = new Report();
+            report.failure = failure;
+            return report;
+        }
+
+        /**
+         * @return number of modules imported
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return number of rows that were not imported
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return messages for the first rejected rows, e.g. "Zeile 4: Ungültige Zahl"
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return reason the import stopped early, or null if the whole file was read
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * minimal streaming csv reader: quoted fields with doubled quotes, line breaks inside quotes,
+     * separator detected in the first line.
+     */
+    private static class CsvReader {
+
+        private final BufferedReader in;
+        private char separator;
+        private int line;
+        private int nextLine = 1;
+
+        CsvReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        char getSeparator() {
+            return separator;
+        }
+
+        /**
+         * @return line number the last record started on
+         */
+        int getLine() {
+            return line;
+        }
+
+        /**
+         * @return fields of the next record, or null at the end of the stream
+         */
+        List<String> next() throws IOException {
+            if (separator == 0) {
+                separator = detectSeparator();
+            }
+            int c = in.read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '﻿') {
+                c = in.read();
+            }
+            line = nextLine;
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (c != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        int following = in.read();
+                        if (following == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            in.reset();
+                        }
+                    } else {
+                        if (c == '\n') {
+                            nextLine++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == separator) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    nextLine++;
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = in.read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        /**
+         * uses ; if the first line contains one outside of quotes, otherwise ,
+         */
+        private char detectSeparator() throws IOException {
+            in.mark(8192);
+            boolean quoted = false;
+            char detected = ',';
+            for (int i = 0; i < 8192; i++) {
+                int c = in.read();
+                if (c == -1 || (c == '\n' && !quoted)) {
+                    break;
+                }
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ';' && !quoted) {
+                    detected = ';';
+                    break;
+                }
+            }
+            in.reset();
+            return detected;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package ch.wiss.m335_lb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * streaming json codec for modules.
+ * modules are written to and read from character streams one at a time, without building a
+ * json tree or one big string. the field layout ({@code id, modulnummer, modultitel, note1, note2})
+ * is the same as the one of the old SharedPreferences json blob.
+ */
+public class ModuleJsonCodec {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_MODULNUMMER = "modulnummer";
+    private static final String FIELD_MODULTITEL = "modultitel";
+    private static final String FIELD_NOTE1 = "note1";
+    private static final String FIELD_NOTE2 = "note2";
+    private static final String FIELD_OP = "op";
+    private static final String FIELD_AVERAGE = "durchschnitt";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ModuleJsonCodec() {
+    }
+
+    /**
+     * writes a module as a single json object.
+     *
+     * @param out stream to write to
+     * @param module module to write
+     */
+    public static void write(Writer out, Module module) throws IOException {
+        write(out, module, null);
+    }
+
+    /**
+     * writes a module as a single json object with an additional operation field.
+     * fields that are null are left out.
+     *
+     * @param out stream to write to
+     * @param module module to write
+     * @param op value of the {@code op} field, or null to leave it out
+     */
+    public static void write(Writer out, Module module, String op) throws IOException {
+        out.write('{');
+        writeFields(out, module, op);
+        out.write('}');
+    }
+
+    /**
+     * writes a module as a single json object including its average, for exports.
+     * the average is left out if the grades are not complete, readers ignore the field.
+     *
+     * @param out stream to write to
+     * @param module module to write
+     */
+    public static void writeWithAverage(Writer out, Module module) throws IOException {
+        out.write('{');
+        boolean first = writeFields(out, module, null);
+        if (module.hasCompleteGrades()) {
+            writeName(out, FIELD_AVERAGE, first);
+            out.write(Double.toString(module.getAverageGrade()));
+        }
+        out.write('}');
+    }
+
+    /**
+     * @return true if no field was written
+     */
+    private static boolean writeFields(Writer out, Module module, String op) throws IOException {
+        boolean first = true;
+        if (op != null) {
+            first = writeName(out, FIELD_OP, first);
+            writeString(out, op);
+        }
+        if (module.getId() != null) {
+            first = writeName(out, FIELD_ID, first);
+            out.write(Long.toString(module.getId()));
+        }
+        if (module.getModulnummer() != null) {
+            first = writeName(out, FIELD_MODULNUMMER, first);
+            writeString(out, module.getModulnummer());
+        }
+        if (module.getModultitel() != null) {
+            first = writeName(out, FIELD_MODULTITEL, first);
+            writeString(out, module.getModultitel());
+        }
+        if (module.getNote1() != null) {
+            first = writeName(out, FIELD_NOTE1, first);
+            out.write(Double.toString(module.getNote1()));
+        }
+        if (module.getNote2() != null) {
+            first = writeName(out, FIELD_NOTE2, first);
+            out.write(Double.toString(module.getNote2()));
+        }
+        return first;
+    }
+
+    private static boolean writeName(Writer out, String name, boolean first) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        out.write('"');
+        out.write(name);
+        out.write("\":");
+        return false;
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.write(value, start, i - start);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        out.write(value, start, length - start);
+        out.write('"');
+    }
+
+    /**
+     * thrown for input that is not valid module json, as opposed to a failing stream
+     */
+    public static class MalformedJsonException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * pull reader returning one module per call.
+     * accepts a json array of module objects as well as objects separated by whitespace (one per line).
+     */
+    public static class ModuleReader implements Closeable {
+
+        private final Reader in;
+        private final boolean lineDelimited;
+        private final boolean requireId;
+        private final StringBuilder buffer = new StringBuilder();
+        private int peeked = -2;
+        private boolean inObject;
+        private String lastOp;
+
+        /**
+         * @param in stream to read from, should be buffered
+         */
+        public ModuleReader(Reader in) {
+            this(in, false);
+        }
+
+        /**
+         * @param in stream to read from, should be buffered
+         * @param lineDelimited true if every object is on its own line. a line break inside an object
+         *                      is then treated as the end of a torn record, so {@link #skipLine()}
+         *                      continues exactly with the next record.
+         */
+        public ModuleReader(Reader in, boolean lineDelimited) {
+            this(in, lineDelimited, true);
+        }
+
+        /**
+         * @param in stream to read from, should be buffered
+         * @param lineDelimited see {@link #ModuleReader(Reader, boolean)}
+         * @param requireId false to also accept objects without id, e.g. modules from an import file
+         */
+        public ModuleReader(Reader in, boolean lineDelimited, boolean requireId) {
+            this.in = in;
+            this.lineDelimited = lineDelimited;
+            this.requireId = requireId;
+        }
+
+        /**
+         * reads the next module object.
+         *
+         * @return the module, or null when the input is exhausted
+         * @throws IOException if the stream fails or the next object is malformed
+         */
+        public Module next() throws IOException {
+            inObject = false;
+            int c = skipSeparators();
+            if (c == -1) {
+                return null;
+            }
+            if (c != '{') {
+                throw syntaxError("expected object");
+            }
+            read();
+            inObject = true;
+            Module module = readModule();
+            inObject = false;
+            return module;
+        }
+
+        /**
+         * @return value of the {@code op} field of the last object read, or null if it had none
+         */
+        public String lastOp() {
+            return lastOp;
+        }
+
+        /**
+         * skips the rest of the current line, used to continue after a malformed object.
+         */
+        public void skipLine() throws IOException {
+            inObject = false;
+            int c;
+            do {
+                c = read();
+            } while (c != -1 && c != '\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Module readModule() throws IOException {
+            Module module = new Module();
+            boolean hasId = false;
+            lastOp = null;
+
+            if (skipWhitespace() == '}') {
+                read();
+                if (requireId) {
+                    throw syntaxError("missing id");
+                }
+                return module;
+            }
+            while (true) {
+                expect('"');
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                int c = skipWhitespace();
+
+                if (c == 'n') {
+                    // null values count as absent
+                    readLiteral("null");
+                } else if (FIELD_ID.equals(name)) {
+                    module.setId(readId());
+                    hasId = true;
+                } else if (FIELD_MODULNUMMER.equals(name)) {
+                    expect('"');
+                    module.setModulnummer(readString());
+                } else if (FIELD_MODULTITEL.equals(name)) {
+                    expect('"');
+                    module.setModultitel(readString());
+                } else if (FIELD_NOTE1.equals(name)) {
+                    module.setNote1(readNumber());
+                } else if (FIELD_NOTE2.equals(name)) {
+                    module.setNote2(readNumber());
+                } else if (FIELD_OP.equals(name)) {
+                    expect('"');
+                    lastOp = readString();
+                } else {
+                    skipValue();
+                }
+
+                c = skipWhitespace();
+                if (c != ',' && c != '}') {
+                    throw syntaxError("expected , or }");
+                }
+                read();
+                if (c == '}') {
+                    break;
+                }
+                skipWhitespace();
+            }
+
+            if (!hasId && requireId) {
+                throw syntaxError("missing id");
+            }
+            return module;
+        }
+
+        private String readString() throws IOException {
+            buffer.setLength(0);
+            while (true) {
+                int c = peek();
+                if (c == -1 || c < 0x20) {
+                    // raw control characters are never valid inside a string, nor is the end of a line
+                    throw syntaxError("unterminated string");
+                }
+                read();
+                if (c == '"') {
+                    return buffer.toString();
+                }
+                if (c != '\\') {
+                    buffer.append((char) c);
+                    continue;
+                }
+
+                c = readChar();
+                switch (c) {
+                    case 'b':
+                        buffer.append('\b');
+                        break;
+                    case 'f':
+                        buffer.append('\f');
+                        break;
+                    case 'n':
+                        buffer.append('\n');
+                        break;
+                    case 'r':
+                        buffer.append('\r');
+                        break;
+                    case 't':
+                        buffer.append('\t');
+                        break;
+                    case 'u':
+                        int value = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(readChar(), 16);
+                            if (digit < 0) {
+                                throw syntaxError("invalid unicode escape");
+                            }
+                            value = (value << 4) | digit;
+                        }
+                        buffer.append((char) value);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        buffer.append((char) c);
+                        break;
+                    default:
+                        throw syntaxError("invalid escape");
+                }
+            }
+        }
+
+        private double readNumber() throws IOException {
+            readNumberToken();
+            try {
+                return Double.parseDouble(buffer.toString());
+            } catch (NumberFormatException e) {
+                throw syntaxError("invalid number");
+            }
+        }
+
+        /**
+         * reads an id as long, a double holds integers exactly only up to 2^53.
+         * ids written as a decimal number, e.g. {@code 7.0}, are accepted if they are whole.
+         */
+        private long readId() throws IOException {
+            readNumberToken();
+            String token = buffer.toString();
+            try {
+                if (token.indexOf('.') < 0 && token.indexOf('e') < 0 && token.indexOf('E') < 0) {
+                    return Long.parseLong(token);
+                }
+                double value = Double.parseDouble(token);
+                if (value == Math.rint(value) && Math.abs(value) < 0x1p53) {
+                    return (long) value;
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw syntaxError("invalid id");
+        }
+
+        private void readNumberToken() throws IOException {
+            buffer.setLength(0);
+            int c = peek();
+            while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+                buffer.append((char) read());
+                c = peek();
+            }
+        }
+
+        private void readLiteral(String literal) throws IOException {
+            for (int i = 0; i < literal.length(); i++) {
+                expect(literal.charAt(i));
+            }
+        }
+
+        /**
+         * skips a value of an unknown field, including nested objects and arrays.
+         */
+        private void skipValue() throws IOException {
+            int depth = 0;
+            do {
+                int c = skipWhitespace();
+                if (c == '"') {
+                    read();
+                    readString();
+                } else if (c == '{' || c == '[') {
+                    read();
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    read();
+                    depth--;
+                } else if (c == ',' || c == ':') {
+                    read();
+                } else if (c == 't') {
+                    readLiteral("true");
+                } else if (c == 'f') {
+                    readLiteral("false");
+                } else if (c == 'n') {
+                    readLiteral("null");
+                } else if (c == -1) {
+                    throw syntaxError("unexpected end of input");
+                } else {
+                    readNumber();
+                }
+            } while (depth > 0);
+        }
+
+        private int skipSeparators() throws IOException {
+            int c = skipWhitespace();
+            while (c == '[' || c == ']' || c == ',') {
+                read();
+                c = skipWhitespace();
+            }
+            return c;
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c = peek();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                if (c == '\n' && lineDelimited && inObject) {
+                    break;
+                }
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        /**
+         * consumes the expected character, a mismatch is left unread.
+         */
+        private void expect(char expected) throws IOException {
+            if (peek() != expected) {
+                throw syntaxError("expected " + expected);
+            }
+            read();
+        }
+
+        /**
+         * consumes one character inside a value, never a line break.
+         */
+        private int readChar() throws IOException {
+            int c = peek();
+            if (c == -1 || c == '\n') {
+                throw syntaxError("unexpected end of line");
+            }
+            return read();
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = in.read();
+            }
+            return peeked;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            peeked = -2;
+            return c;
+        }
+
+        private IOException syntaxError(String message) {
+            return new MalformedJsonException("malformed module json: " + message);
+        }
+    }
+}
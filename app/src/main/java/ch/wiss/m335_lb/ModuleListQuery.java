@@ -0,0 +1,96 @@
+package ch.wiss.m335_lb;
+
+/**
+ * describes which modules the list shows and in which order: search text, sort order and grade range.
+ * instances are immutable, the {@code with...} methods return changed copies.
+ */
+public class ModuleListQuery {
+
+    public static final ModuleListQuery ALL =
+            new ModuleListQuery("", ModuleSortIndex.SortOrder.INSERTION, false, Double.NaN, Double.NaN);
+
+    private final String searchText;
+    private final ModuleSortIndex.SortOrder sortOrder;
+    private final boolean descending;
+    private final double minGrade;
+    private final double maxGrade;
+
+    /**
+     * constructor
+     *
+     * @param searchText search text, empty for all modules
+     * @param sortOrder order of the list
+     * @param descending true to reverse the order
+     * @param minGrade smallest average shown, inclusive, NaN for no lower bound
+     * @param maxGrade largest average shown, inclusive, NaN for no upper bound
+     */
+    public ModuleListQuery(String searchText, ModuleSortIndex.SortOrder sortOrder, boolean descending,
+                           double minGrade, double maxGrade) {
+        this.searchText = searchText != null ? searchText : "";
+        this.sortOrder = sortOrder;
+        this.descending = descending;
+        this.minGrade = minGrade;
+        this.maxGrade = maxGrade;
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+
+    public ModuleSortIndex.SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public double getMinGrade() {
+        return minGrade;
+    }
+
+    public double getMaxGrade() {
+        return maxGrade;
+    }
+
+    public ModuleListQuery withSearchText(String searchText) {
+        return new ModuleListQuery(searchText, sortOrder, descending, minGrade, maxGrade);
+    }
+
+    public ModuleListQuery withSortOrder(ModuleSortIndex.SortOrder sortOrder, boolean descending) {
+        return new ModuleListQuery(searchText, sortOrder, descending, minGrade, maxGrade);
+    }
+
+    public ModuleListQuery withGradeRange(double minGrade, double maxGrade) {
+        return new ModuleListQuery(searchText, sortOrder, descending, minGrade, maxGrade);
+    }
+
+    /**
+     * @return true if a search text is set
+     */
+    public boolean hasSearchText() {
+        return !searchText.trim().isEmpty();
+    }
+
+    /**
+     * @return true if only modules within a grade range are shown
+     */
+    public boolean hasGradeFilter() {
+        return !Double.isNaN(minGrade) || !Double.isNaN(maxGrade);
+    }
+
+    /**
+     * checks an average against the grade range. modules without complete grades never match a range.
+     *
+     * @param average average grade, NaN if the grades are not complete
+     * @return true if the average lies within the range
+     */
+    public boolean matchesGrade(double average) {
+        if (!hasGradeFilter()) {
+            return true;
+        }
+        return !Double.isNaN(average)
+                && (Double.isNaN(minGrade) || average >= minGrade)
+                && (Double.isNaN(maxGrade) || average <= maxGrade);
+    }
+}
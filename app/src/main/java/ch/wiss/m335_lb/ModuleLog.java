@@ -0,0 +1,1140 @@
+package ch.wiss.m335_lb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * append-only log storage engine for modules.
+ * every change is written as a single upsert or delete entry to a log file instead of rewriting
+ * the whole data set. the log is compacted into a snapshot in the background and replayed on startup.
+ *
+ * <p>with a flush delay, changes are applied in memory right away but written behind: all changes
+ * within the delay are coalesced into one write with one entry per changed module. {@link #flush()}
+ * writes them at once, e.g. before the app goes to the background.</p>
+ *
+ * <p>every change ends by publishing an immutable {@link ModuleSnapshot}. lookups and lists are read from
+ * it without taking the lock of the log, so readers never wait for a writer and never see half of a
+ * batch. only {@link #query(ModuleListQuery)} still locks, it needs the search and sort indexes.</p>
+ */
+public class ModuleLog implements ModuleStore {
+
+    /**
+     * file format of the compacted snapshot, the log itself is always json lines
+     */
+    public enum SnapshotFormat {
+        JSON("modules.snapshot"),
+        BINARY("modules.snapshot.bin");
+
+        private final String fileName;
+
+        SnapshotFormat(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    private static final String SNAPSHOT_TMP_FILE = "modules.snapshot.tmp";
+    private static final String LOG_FILE = "modules.log";
+    private static final String COMPACTING_LOG_FILE = "modules.log.old";
+    private static final String DAMAGED_SUFFIX = ".damaged";
+
+    private static final String OP_UPSERT = "u";
+    private static final String OP_DELETE = "d";
+    // upserts of a batch only count once the commit entry (holding the number of entries as id) follows
+    private static final String OP_BATCH_UPSERT = "bu";
+    private static final String OP_COMMIT = "c";
+
+    // the log is compacted once it holds more entries than live modules (and at least this many)
+    private static final int MIN_ENTRIES_BEFORE_COMPACTION = 64;
+
+    private final SnapshotFormat snapshotFormat;
+    private final File snapshotFile;
+    private final File otherSnapshotFile;
+    private final File snapshotTmpFile;
+    private final File logFile;
+    private final File compactingLogFile;
+
+    // replayed state in columns, indexed by id for single-record lookups
+    private final ModuleTable table = new ModuleTable();
+    // row view used for the aggregate, avoids a module object per row
+    private final ModuleTable.Row cursor = table.newRow();
+    // runs compactions and the delayed flushes
+    private final ScheduledExecutorService backgroundExecutor = Executors.newSingleThreadScheduledExecutor();
+    // 0 writes every change right away
+    private final long flushDelayMillis;
+    // modules changed since the last flush in the order their entries have to be written, true for deletes
+    private final LinkedHashMap<Long, Boolean> pendingChanges = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private ChangeListener changeListener;
+    // state of the last change for lock-free readers, replaced as a whole
+    private volatile ModuleSnapshot snapshot;
+    private long version;
+
+    // running aggregate over the averages of all modules with complete grades
+    private double gradeSum;
+    private int gradeCount;
+    // distribution of the same averages, maintained with the aggregate
+    private final ModuleStatistics statistics = new ModuleStatistics();
+    // modulnummer and modultitel words, maintained on every change
+    private final ModuleSearchIndex searchIndex = new ModuleSearchIndex();
+    // sort orders of the list, built on first use
+    private final ModuleSortIndex sortIndex = new ModuleSortIndex(table);
+
+    private ChecksummedLines.LineWriter logWriter;
+    // a write failed and may have left an unfinished line at the end of the log
+    private boolean logTorn;
+    // reused for the json text of each entry
+    private final StringWriter entryText = new StringWriter();
+    // files found damaged during replay, moved aside once the intact records are saved again
+    private final List<File> damagedFiles = new ArrayList<>();
+    private int logEntries;
+    private boolean compacting;
+
+    /**
+     * opens the log in the given directory and replays snapshot and log into memory.
+     *
+     * @param directory directory holding the snapshot and log files
+     */
+    public ModuleLog(File directory) {
+        this(directory, SnapshotFormat.JSON);
+    }
+
+    /**
+     * opens the log in the given directory and replays snapshot and log into memory.
+     * an existing snapshot in the other format is still read and converted right away.
+     *
+     * @param directory directory holding the snapshot and log files
+     * @param snapshotFormat format used for writing snapshots
+     */
+    public ModuleLog(File directory, SnapshotFormat snapshotFormat) {
+        this(directory, snapshotFormat, 0);
+    }
+
+    /**
+     * opens the log in the given directory and replays snapshot and log into memory.
+     *
+     * @param directory directory holding the snapshot and log files, created if it does not exist
+     * @param snapshotFormat format used for writing snapshots
+     * @param flushDelayMillis time changes are held back to be written together, 0 to write every change right away
+     */
+    public ModuleLog(File directory, SnapshotFormat snapshotFormat, long flushDelayMillis) {
+        directory.mkdirs();
+        this.snapshotFormat = snapshotFormat;
+        this.flushDelayMillis = flushDelayMillis;
+        this.snapshotFile = new File(directory, snapshotFormat.fileName);
+        this.otherSnapshotFile = new File(directory, (snapshotFormat == SnapshotFormat.JSON
+                ? SnapshotFormat.BINARY : SnapshotFormat.JSON).fileName);
+        this.snapshotTmpFile = new File(directory, SNAPSHOT_TMP_FILE);
+        this.logFile = new File(directory, LOG_FILE);
+        this.compactingLogFile = new File(directory, COMPACTING_LOG_FILE);
+        synchronized (this) {
+            replay();
+            publish();
+        }
+    }
+
+    /**
+     * returns the state of the last change. readers use it without locking the log, a writer never
+     * changes a published snapshot.
+     *
+     * @return current snapshot
+     */
+    @Override
+    public ModuleSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * checks if the store holds no modules at all.
+     *
+     * @return true if no modules are stored
+     */
+    @Override
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    /**
+     * returns copies of all stored modules in insertion order.
+     *
+     * @return List of stored modules
+     */
+    @Override
+    public List<Module> getAll() {
+        return snapshot.getAll();
+    }
+
+    /**
+     * @return number of stored modules
+     */
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * @return largest id of the stored modules, or 0 if there are none
+     */
+    @Override
+    public long getMaxId() {
+        return snapshot.getMaxId();
+    }
+
+    /**
+     * returns the ids and content hashes of all stored modules in insertion order, without copying any module.
+     *
+     * @return id list
+     */
+    @Override
+    public ModuleIdList getIdList() {
+        return snapshot.getIdList();
+    }
+
+    /**
+     * returns the ids of the modules matching the query in the requested order.
+     * with a search text only the hits are looked at, with a grade range only the modules in that range of
+     * the average order. the few candidates are then sorted by their rank in the maintained order, so the
+     * cost grows with the number of candidates, not with the number of modules.
+     *
+     * @param query search text, sort order and grade range
+     * @return ids and content hashes of the matching modules
+     */
+    @Override
+    public synchronized ModuleIdList query(ModuleListQuery query) {
+        // sorted ids of the search hits, null if there is no search text
+        long[] matches = searchIndex.search(query.getSearchText());
+        ModuleSortIndex.SortOrder order = query.getSortOrder();
+        if (matches == null && !query.hasGradeFilter()) {
+            return queryAll(order, query.isDescending());
+        }
+
+        int[] rows;
+        int count;
+        if (matches != null) {
+            rows = new int[matches.length];
+            count = 0;
+            for (long id : matches) {
+                int row = table.indexOf(id);
+                if (row >= 0 && query.matchesGrade(cursor.moveTo(row).getAverageGrade())) {
+                    rows[count++] = row;
+                }
+            }
+        } else {
+            ModuleSortIndex.SortOrder byAverage = ModuleSortIndex.SortOrder.AVERAGE;
+            long[] averageIds = sortIndex.getIds(byAverage);
+            int from = Double.isNaN(query.getMinGrade()) ? 0 : sortIndex.lowerBound(byAverage, query.getMinGrade());
+            int to = Double.isNaN(query.getMaxGrade()) ? sortIndex.getRankedCount(byAverage)
+                    : sortIndex.upperBound(byAverage, query.getMaxGrade());
+            count = Math.max(0, to - from);
+            rows = new int[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = table.indexOf(averageIds[from + i]);
+            }
+            if (order == byAverage) {
+                // already in order, and all of them have an average
+                return toIdList(rows, count, query.isDescending());
+            }
+        }
+        sortRows(rows, count, order, query.isDescending());
+        return toIdList(rows, count, false);
+    }
+
+    /**
+     * lists all modules, in the order of the table or of a maintained sort order.
+     */
+    private ModuleIdList queryAll(ModuleSortIndex.SortOrder order, boolean descending) {
+        if (order == ModuleSortIndex.SortOrder.INSERTION) {
+            int[] rows = new int[table.size()];
+            int count = 0;
+            for (int row = 0; row < table.getRowCount(); row++) {
+                if (table.isLive(row)) {
+                    rows[count++] = row;
+                }
+            }
+            return toIdList(rows, count, descending);
+        }
+
+        long[] sortedIds = sortIndex.getIds(order);
+        int size = table.size();
+        // a reversed order keeps the modules without a sort key at the end
+        int ranked = sortIndex.getRankedCount(order);
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            int position = descending && i < ranked ? ranked - 1 - i : i;
+            rows[i] = table.indexOf(sortedIds[position]);
+        }
+        return toIdList(rows, size, false);
+    }
+
+    /**
+     * sorts rows by the insertion order or by their rank in a maintained order. a reversed order keeps
+     * the modules without a sort key at the end.
+     */
+    private void sortRows(int[] rows, int count, ModuleSortIndex.SortOrder order, boolean descending) {
+        if (order == ModuleSortIndex.SortOrder.INSERTION) {
+            // rows are in insertion order
+            Arrays.sort(rows, 0, count);
+            if (descending) {
+                reverse(rows, 0, count);
+            }
+            return;
+        }
+
+        // rank in the high half and the index in the low half, so sorting the keys sorts the rows
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) sortIndex.rankOf(order, rows[i]) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[count];
+        int ranked = 0;
+        int rankedCount = descending ? sortIndex.getRankedCount(order) : 0;
+        for (int i = 0; i < count; i++) {
+            sorted[i] = rows[(int) keys[i]];
+            if ((int) (keys[i] >>> 32) < rankedCount) {
+                ranked++;
+            }
+        }
+        System.arraycopy(sorted, 0, rows, 0, count);
+        if (descending) {
+            reverse(rows, 0, ranked);
+        }
+    }
+
+    private static void reverse(int[] rows, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+    }
+
+    /**
+     * @param descending true to list the rows from last to first
+     */
+    private ModuleIdList toIdList(int[] rows, int count, boolean descending) {
+        long[] ids = new long[count];
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            int row = rows[descending ? count - 1 - i : i];
+            ids[i] = table.getId(row);
+            hashes[i] = table.getContentHash(row);
+        }
+        return new ModuleIdList(ids, hashes);
+    }
+
+    /**
+     * returns copies of the modules with the given ids.
+     *
+     * @param ids array of ids
+     * @param from first index in {@code ids}, inclusive
+     * @param to last index in {@code ids}, exclusive
+     * @return modules in the order of {@code ids}, null for ids that no longer exist
+     */
+    @Override
+    public List<Module> findByIds(long[] ids, int from, int to) {
+        return snapshot.findByIds(ids, from, to);
+    }
+
+    /**
+     * returns the average of all modules that have both grades.
+     * it is maintained on every change, so this does not depend on the number of modules.
+     *
+     * @return overall average, or null if no module has complete grades
+     */
+    @Override
+    public Double getOverallAverage() {
+        return snapshot.getOverallAverage();
+    }
+
+    @Override
+    public int getGradedCount() {
+        return snapshot.getGradedCount();
+    }
+
+    /**
+     * returns the grade statistics of the current version. the maintained statistics are copied once per
+     * version on first use, later readers of the same version get that copy without locking the log.
+     *
+     * @return statistics shared with the other readers of this version, they must not be changed
+     */
+    @Override
+    public ModuleStatistics getStatistics() {
+        ModuleStatistics published = snapshot.getPublishedStatistics();
+        if (published != null) {
+            return published;
+        }
+        synchronized (this) {
+            // while the log is locked the current snapshot matches the maintained statistics
+            ModuleSnapshot current = snapshot;
+            if (current.getPublishedStatistics() == null) {
+                current.publishStatistics(new ModuleStatistics(statistics));
+            }
+            return current.getPublishedStatistics();
+        }
+    }
+
+    /**
+     * looks up a single module by its id.
+     *
+     * @param id id of the module
+     * @return copy of the stored module, or null if no module has this id
+     */
+    @Override
+    public Module findById(long id) {
+        return snapshot.findById(id);
+    }
+
+    /**
+     * inserts a new module or replaces the stored module with the same id.
+     *
+     * @param module module to store, must have an id
+     */
+    @Override
+    public synchronized void upsert(Module module) {
+        if (module.getId() == null) {
+            throw new IllegalArgumentException("module without id: " + module);
+        }
+        int row = table.indexOf(module.getId());
+        if (row >= 0 && table.matches(row, module)) {
+            return;
+        }
+
+        putModule(module);
+        markUpserted(module.getId());
+        scheduleFlush();
+        publish();
+        notifyChanged(new long[]{module.getId()});
+    }
+
+    /**
+     * stores a batch of modules as one transaction with a single flush. the entries are followed by a
+     * commit entry, a batch torn by a crash is dropped as a whole when the log is replayed.
+     *
+     * @param batch modules to store, all must have an id
+     * @return true if the batch was written, false if writing failed and nothing was applied
+     */
+    @Override
+    public synchronized boolean upsertAll(List<Module> batch) {
+        List<Module> changed = new ArrayList<>(batch.size());
+        for (Module module : batch) {
+            if (module.getId() == null) {
+                throw new IllegalArgumentException("module without id: " + module);
+            }
+            int row = table.indexOf(module.getId());
+            if (row < 0 || !table.matches(row, module)) {
+                changed.add(module);
+            }
+        }
+        if (changed.isEmpty()) {
+            return true;
+        }
+
+        try {
+            // earlier changes have to reach the log before the batch
+            writePendingChanges();
+            for (Module module : changed) {
+                appendEntry(module, OP_BATCH_UPSERT);
+            }
+            appendEntry(new Module((long) changed.size(), null, null, null, null), OP_COMMIT);
+            flushLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+            abortBatch();
+            return false;
+        }
+        long[] changedIds = new long[changed.size()];
+        for (int i = 0; i < changed.size(); i++) {
+            putModule(changed.get(i));
+            changedIds[i] = changed.get(i).getId();
+        }
+        maybeCompact();
+        publish();
+        notifyChanged(changedIds);
+        return true;
+    }
+
+    /**
+     * removes the module with the given id.
+     *
+     * @param id id of the module to remove
+     * @return true if a module was removed
+     */
+    @Override
+    public synchronized boolean delete(long id) {
+        if (!removeModule(id)) {
+            return false;
+        }
+
+        pendingChanges.put(id, Boolean.TRUE);
+        scheduleFlush();
+        publish();
+        notifyChanged(new long[]{id});
+        return true;
+    }
+
+    /**
+     * writes all changes held back by the flush delay, a barrier for tests and before the app is stopped.
+     */
+    @Override
+    public synchronized void flush() {
+        flushScheduled = false;
+        try {
+            writePendingChanges();
+            flushLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * writes all changes, waits for a running compaction and stops the background thread.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        awaitCompaction();
+        try {
+            closeLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // nothing is pending any more, a scheduled flush can be dropped
+        backgroundExecutor.shutdownNow();
+    }
+
+    /**
+     * makes the stored data equal to the given list by appending only the entries that differ.
+     * if the list reorders existing modules the state is rewritten as a new snapshot instead.
+     *
+     * @param newModules complete list of modules that should be stored
+     * @return false if a new snapshot was needed and could not be written
+     */
+    @Override
+    public synchronized boolean replaceAll(List<Module> newModules) {
+        Map<Long, Module> target = new LinkedHashMap<>();
+        for (Module module : newModules) {
+            if (module.getId() == null) {
+                throw new IllegalArgumentException("module without id: " + module);
+            }
+            target.put(module.getId(), module);
+        }
+
+        if (!keepsOrder(target)) {
+            return resetTo(target.values());
+        }
+
+        // collected first, deleting rows may move the remaining ones
+        long[] removedIds = new long[table.size()];
+        int removedCount = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row) && !target.containsKey(table.getId(row))) {
+                removedIds[removedCount++] = table.getId(row);
+            }
+        }
+        long[] changedIds = Arrays.copyOf(removedIds, removedCount + target.size());
+        int changedCount = removedCount;
+        for (int i = 0; i < removedCount; i++) {
+            removeModule(removedIds[i]);
+            pendingChanges.put(removedIds[i], Boolean.TRUE);
+        }
+        for (Module module : target.values()) {
+            int row = table.indexOf(module.getId());
+            if (row < 0 || !table.matches(row, module)) {
+                putModule(module);
+                markUpserted(module.getId());
+                changedIds[changedCount++] = module.getId();
+            }
+        }
+        scheduleFlush();
+        if (changedCount > 0) {
+            publish();
+            notifyChanged(Arrays.copyOf(changedIds, changedCount));
+        }
+        return true;
+    }
+
+    /**
+     * replaces the whole store by writing a fresh snapshot instead of log entries.
+     * used for migrations and for changes the log cannot express.
+     * if the snapshot cannot be written the state is read back from the files, which still hold the
+     * previous state and the entries that were held back.
+     *
+     * @param newModules complete list of modules that should be stored
+     * @return false if the snapshot could not be written
+     */
+    @Override
+    public synchronized boolean resetTo(Collection<Module> newModules) {
+        for (Module module : newModules) {
+            if (module.getId() == null) {
+                throw new IllegalArgumentException("module without id: " + module);
+            }
+        }
+        try {
+            // the held back entries are part of the previous state, which is kept if the snapshot fails
+            writePendingChanges();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        pendingChanges.clear();
+        clearState();
+        for (Module module : newModules) {
+            putModule(module);
+        }
+        boolean written = true;
+        try {
+            rewriteSnapshot();
+        } catch (IOException e) {
+            e.printStackTrace();
+            clearState();
+            replay();
+            written = false;
+        }
+        publish();
+        notifyChanged(null);
+        return written;
+    }
+
+    private void clearState() {
+        table.clear();
+        searchIndex.clear();
+        sortIndex.invalidate();
+        gradeSum = 0;
+        gradeCount = 0;
+        statistics.clear();
+        statistics.beginBulkUpdate();
+    }
+
+    /**
+     * sets the listener told about every change. it is called while the log is locked and must not block.
+     *
+     * @param listener listener, or null to remove it
+     */
+    @Override
+    public synchronized void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * stores a module in the in-memory state and keeps the aggregate up to date.
+     */
+    private void putModule(Module module) {
+        int row = table.indexOf(module.getId());
+        boolean sameText = false;
+        if (row >= 0) {
+            removeFromAggregate(row);
+            sortIndex.remove(row);
+            sameText = Objects.equals(table.getModulnummer(row), module.getModulnummer())
+                    && Objects.equals(table.getModultitel(row), module.getModultitel());
+            if (!sameText) {
+                searchIndex.remove(module.getId(), table.getModulnummer(row), table.getModultitel(row));
+            }
+        }
+        row = table.put(module);
+        addToAggregate(row);
+        sortIndex.add(row);
+        if (!sameText) {
+            searchIndex.add(module.getId(), module.getModulnummer(), module.getModultitel());
+        }
+    }
+
+    /**
+     * removes a module from the in-memory state and keeps the aggregate up to date.
+     *
+     * @return true if a module was removed
+     */
+    private boolean removeModule(long id) {
+        int row = table.indexOf(id);
+        if (row < 0) {
+            return false;
+        }
+        removeFromAggregate(row);
+        sortIndex.remove(row);
+        searchIndex.remove(id, table.getModulnummer(row), table.getModultitel(row));
+        return table.remove(id);
+    }
+
+    private void addToAggregate(int row) {
+        cursor.moveTo(row);
+        if (cursor.hasCompleteGrades()) {
+            gradeSum += cursor.getAverageGrade();
+            gradeCount++;
+            statistics.add(cursor);
+        }
+    }
+
+    private void removeFromAggregate(int row) {
+        cursor.moveTo(row);
+        if (cursor.hasCompleteGrades()) {
+            gradeSum -= cursor.getAverageGrade();
+            gradeCount--;
+            statistics.remove(cursor);
+        }
+    }
+
+    /**
+     * checks whether the modules that survive in the target keep their current relative order,
+     * which is the only ordering the log can express (new ids are always appended).
+     */
+    private boolean keepsOrder(Map<Long, Module> target) {
+        Iterator<Long> targetIds = target.keySet().iterator();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            long id = table.getId(row);
+            if (!table.isLive(row) || !target.containsKey(id)) {
+                continue;
+            }
+            // new ids in the target have to come after all existing ones
+            Long next = targetIds.hasNext() ? targetIds.next() : null;
+            if (next == null || next != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * makes the current state visible to readers, called once at the end of every change.
+     */
+    private void publish() {
+        snapshot = new ModuleSnapshot(++version, table.snapshot(), gradeSum, gradeCount);
+    }
+
+    private void notifyChanged(long[] ids) {
+        if (changeListener != null) {
+            changeListener.onModulesChanged(ids);
+        }
+    }
+
+    /**
+     * records an upsert for the next flush. a module deleted earlier in the same window has to be
+     * deleted in the log first, otherwise replay would keep it at its old position.
+     */
+    private void markUpserted(long id) {
+        if (pendingChanges.get(id) == Boolean.TRUE) {
+            try {
+                writePendingChanges();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // an existing entry keeps its position, so new modules are written in insertion order
+        pendingChanges.putIfAbsent(id, Boolean.FALSE);
+    }
+
+    private void scheduleFlush() {
+        if (flushDelayMillis <= 0) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            backgroundExecutor.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * appends one entry per changed module with its current state, without flushing the writer.
+     */
+    private void writePendingChanges() throws IOException {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, Boolean> change : pendingChanges.entrySet()) {
+            int row = table.indexOf(change.getKey());
+            if (change.getValue() || row < 0) {
+                appendEntry(new Module(change.getKey(), null, null, null, null), OP_DELETE);
+            } else {
+                appendEntry(table.toModule(row), OP_UPSERT);
+            }
+        }
+        pendingChanges.clear();
+    }
+
+    private void appendEntry(Module module, String op) throws IOException {
+        if (logWriter == null) {
+            logWriter = new ChecksummedLines.LineWriter(new FileOutputStream(logFile, true));
+            if (logTorn) {
+                logWriter.endLine();
+                logTorn = false;
+            }
+        }
+        entryText.getBuffer().setLength(0);
+        ModuleJsonCodec.write(entryText, module, op);
+        logWriter.write(entryText.toString());
+        logEntries++;
+    }
+
+    /**
+     * flushes the written entries to the disk, changes are held back by the flush delay so this is rare.
+     */
+    private void flushLog() throws IOException {
+        if (logWriter != null) {
+            logWriter.sync();
+        }
+    }
+
+    /**
+     * cleans up after a batch could not be written completely. its entries may already be in the log and
+     * the writer may hold part of a line, so the writer is dropped and the log is replaced by a snapshot of
+     * the state without the batch. if that fails as well the next entry starts on a new line, replay then
+     * only applies the entries right before a commit (see {@link #replayFile}).
+     */
+    private void abortBatch() {
+        if (logWriter != null) {
+            logWriter.discard();
+            logWriter = null;
+        }
+        try {
+            rewriteSnapshot();
+        } catch (IOException e) {
+            e.printStackTrace();
+            logTorn = true;
+        }
+    }
+
+    private void closeLog() throws IOException {
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+        }
+    }
+
+    /**
+     * starts a background compaction once the log has grown larger than the live data.
+     * the current log is rotated away so new entries can be appended while the snapshot is written.
+     */
+    private void maybeCompact() {
+        if (compacting || logEntries < Math.max(MIN_ENTRIES_BEFORE_COMPACTION, table.size())) {
+            return;
+        }
+
+        try {
+            // held back entries belong into the rotated log, the snapshot is taken from the same state
+            writePendingChanges();
+            closeLog();
+            rotateLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        compacting = true;
+        logEntries = 0;
+        ModuleTable state = table.snapshot();
+
+        backgroundExecutor.execute(() -> {
+            try {
+                writeSnapshot(state);
+                if (!compactingLogFile.delete()) {
+                    throw new IOException("could not delete " + compactingLogFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (ModuleLog.this) {
+                    compacting = false;
+                    ModuleLog.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * blocks until a running background compaction has finished writing its snapshot.
+     */
+    private void awaitCompaction() {
+        while (compacting) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * moves the active log aside for compaction. a leftover log from an earlier failed
+     * compaction is kept and extended so no entry is lost before the next snapshot exists.
+     */
+    private void rotateLog() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        if (!compactingLogFile.exists()) {
+            if (!logFile.renameTo(compactingLogFile)) {
+                throw new IOException("could not rotate " + logFile);
+            }
+            return;
+        }
+
+        try (InputStream in = new FileInputStream(logFile);
+             OutputStream out = new FileOutputStream(compactingLogFile, true)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!logFile.delete()) {
+            throw new IOException("could not delete " + logFile);
+        }
+    }
+
+    /**
+     * synchronously replaces snapshot and log with the current in-memory state.
+     */
+    private void rewriteSnapshot() throws IOException {
+        awaitCompaction();
+        closeLog();
+        writeSnapshot(table);
+        // the snapshot summed the grades from scratch, drop rounding errors of the running sum
+        recomputeAggregate();
+        logFile.delete();
+        compactingLogFile.delete();
+        logEntries = 0;
+    }
+
+    /**
+     * sums the aggregate up again, the statistics hold the exact values and are kept.
+     */
+    private void recomputeAggregate() {
+        gradeSum = 0;
+        gradeCount = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row) && cursor.moveTo(row).hasCompleteGrades()) {
+                gradeSum += cursor.getAverageGrade();
+                gradeCount++;
+            }
+        }
+    }
+
+    /**
+     * writes the given modules to a temp file and atomically renames it over the snapshot.
+     * binary snapshots also persist the grade aggregate of the state.
+     */
+    private void writeSnapshot(ModuleTable state) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(snapshotTmpFile)) {
+            if (snapshotFormat == SnapshotFormat.BINARY) {
+                ModuleTable.Row view = state.newRow();
+                double sum = 0;
+                int count = 0;
+                for (int row = 0; row < state.getRowCount(); row++) {
+                    if (state.isLive(row) && view.moveTo(row).hasCompleteGrades()) {
+                        sum += view.getAverageGrade();
+                        count++;
+                    }
+                }
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                ModuleBinaryCodec.RecordWriter writer = new ModuleBinaryCodec.RecordWriter(data);
+                writer.writeHeader(state.size(), sum, count);
+                for (int row = 0; row < state.getRowCount(); row++) {
+                    if (state.isLive(row)) {
+                        writer.write(state, row);
+                    }
+                }
+                data.flush();
+            } else {
+                ChecksummedLines.LineWriter writer = new ChecksummedLines.LineWriter(out);
+                StringWriter text = new StringWriter();
+                for (int row = 0; row < state.getRowCount(); row++) {
+                    if (state.isLive(row)) {
+                        text.getBuffer().setLength(0);
+                        ModuleJsonCodec.write(text, state.toModule(row));
+                        writer.write(text.toString());
+                    }
+                }
+                writer.flush();
+            }
+            out.getFD().sync();
+        }
+        if (!snapshotTmpFile.renameTo(snapshotFile)) {
+            throw new IOException("could not replace " + snapshotFile);
+        }
+        // a snapshot in the other format is outdated from now on
+        otherSnapshotFile.delete();
+    }
+
+    /**
+     * rebuilds the in-memory state from snapshot, a leftover compaction log and the active log.
+     * replaying is idempotent, so entries already contained in the snapshot do no harm.
+     */
+    private void replay() {
+        // values are only sorted once after loading instead of on every add
+        statistics.beginBulkUpdate();
+        replaySnapshot();
+        replayFile(compactingLogFile, false);
+        logEntries = replayFile(logFile, false);
+
+        if (!damagedFiles.isEmpty() || compactingLogFile.exists() || otherSnapshotFile.exists()) {
+            // a compaction was interrupted, the snapshot format changed or records had to be salvaged,
+            // write a fresh snapshot
+            try {
+                keepDamagedFiles();
+                rewriteSnapshot();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * moves damaged files aside instead of deleting them with the next snapshot, so the skipped records
+     * could still be recovered by hand.
+     */
+    private void keepDamagedFiles() throws IOException {
+        for (File file : damagedFiles) {
+            File copy = new File(file.getParentFile(), file.getName() + DAMAGED_SUFFIX);
+            copy.delete();
+            if (!file.renameTo(copy)) {
+                throw new IOException("could not move aside " + file);
+            }
+        }
+        damagedFiles.clear();
+    }
+
+    /**
+     * loads the newest snapshot. two snapshots only exist if the app died right after switching formats.
+     */
+    private void replaySnapshot() {
+        File newest = snapshotFile;
+        if (otherSnapshotFile.exists()
+                && (!snapshotFile.exists() || otherSnapshotFile.lastModified() > snapshotFile.lastModified())) {
+            newest = otherSnapshotFile;
+        }
+        if (!newest.exists()) {
+            return;
+        }
+
+        if (newest.getName().equals(SnapshotFormat.BINARY.fileName)) {
+            replayBinarySnapshot(newest);
+        } else {
+            replayFile(newest, true);
+        }
+    }
+
+    /**
+     * reads a binary snapshot through a memory mapped buffer.
+     * the grade aggregate is taken from the header if the snapshot has one.
+     */
+    private void replayBinarySnapshot(File file) {
+        try {
+            ByteBuffer buffer = ModuleBinaryCodec.map(file);
+            ModuleBinaryCodec.RecordReader reader = new ModuleBinaryCodec.RecordReader(buffer);
+            boolean useHeaderAggregate = reader.hasAggregate();
+            int row;
+            while ((row = reader.readInto(table)) >= 0) {
+                searchIndex.add(table.getId(row), table.getModulnummer(row), table.getModultitel(row));
+                if (useHeaderAggregate) {
+                    statistics.add(cursor.moveTo(row));
+                } else {
+                    addToAggregate(row);
+                }
+            }
+            if (!reader.isIntact()) {
+                // the aggregate of the header includes the records that were skipped
+                damagedFiles.add(file);
+                recomputeAggregate();
+            } else if (useHeaderAggregate) {
+                gradeSum = reader.getGradeSum();
+                gradeCount = reader.getGradeCount();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            damagedFiles.add(file);
+            recomputeAggregate();
+        }
+    }
+
+    /**
+     * applies all entries of one file, skipping lines that fail their checksum or cannot be parsed
+     * (e.g. a torn last write). batch entries are held back until their commit entry, a batch without
+     * commit is dropped. a commit applies only as many entries before it as it counts, entries of an
+     * aborted batch that were left in front of them are dropped as well.
+     *
+     * @return number of entries read
+     */
+    private int replayFile(File file, boolean isSnapshot) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int entries = 0;
+        boolean damaged = false;
+        List<Module> batch = new ArrayList<>();
+        try (ChecksummedLines.LineReader lines = new ChecksummedLines.LineReader(new FileInputStream(file))) {
+            while (true) {
+                Module module;
+                String op;
+                try {
+                    String line = lines.next();
+                    if (line == null) {
+                        break;
+                    }
+                    ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(line), true);
+                    module = reader.next();
+                    if (module == null) {
+                        continue;
+                    }
+                    op = isSnapshot ? null : reader.lastOp();
+                } catch (ChecksummedLines.CorruptLineException | ModuleJsonCodec.MalformedJsonException e) {
+                    // a damaged line or the last one torn by a crash. the file is replaced by a fresh
+                    // snapshot, new entries must not be appended to the torn line
+                    e.printStackTrace();
+                    damaged = true;
+                    batch.clear();
+                    continue;
+                }
+                entries++;
+
+                if (OP_BATCH_UPSERT.equals(op)) {
+                    batch.add(module);
+                    continue;
+                }
+                if (OP_COMMIT.equals(op)) {
+                    long committed = module.getId();
+                    // fewer entries than committed means one of them was damaged, the batch is all or nothing
+                    if (batch.size() >= committed) {
+                        for (Module batchModule : batch.subList(batch.size() - (int) committed, batch.size())) {
+                            putModule(batchModule);
+                        }
+                    }
+                    batch.clear();
+                    continue;
+                }
+                // any other entry means the open batch was never committed
+                batch.clear();
+                if (OP_DELETE.equals(op)) {
+                    removeModule(module.getId());
+                } else {
+                    putModule(module);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            damaged = true;
+        }
+        if (damaged) {
+            damagedFiles.add(file);
+        }
+        return entries;
+    }
+}
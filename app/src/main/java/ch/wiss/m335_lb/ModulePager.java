@@ -0,0 +1,240 @@
+package ch.wiss.m335_lb;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * paged data source for the module list.
+ * the list only holds the ids of all modules, the rows are loaded page by page as the list scrolls,
+ * together with their texts (see {@link ModuleDisplayRow}), which are prepared on the storage worker.
+ * loaded rows are cached by id, so rows that did not change survive a new id list, a changed module
+ * gets a new row. rows bound least recently (the ones farthest from the visible area) are evicted again.
+ * this only bounds the rows and texts of the list, the store itself (e.g. {@link ModuleLog}) still keeps
+ * every module in memory. all methods must be called on the main thread.
+ */
+public class ModulePager {
+
+    /**
+     * interface for getting notified when modules of a page have been loaded
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int positionStart, int itemCount);
+    }
+
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 6;
+    private static final int MAX_CACHED_MODULES = PAGE_SIZE * MAX_PAGES;
+
+    private final AsyncModuleStorage storage;
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    // access ordered, so iteration starts with the row bound least recently
+    private final Map<Long, ModuleDisplayRow> cache = new LinkedHashMap<Long, ModuleDisplayRow>(MAX_CACHED_MODULES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ModuleDisplayRow> eldest) {
+            return size() > MAX_CACHED_MODULES;
+        }
+    };
+
+    private ModuleIdList idList = ModuleIdList.EMPTY;
+    // incremented whenever the ids change, results for an old id list are matched to the new one by id
+    private int generation;
+    private OnPageLoadedListener listener;
+    private ModuleDisplayRow.TextMeasurer textMeasurer = ModuleDisplayRow.PLAIN;
+
+    /**
+     * constructor
+     *
+     * @param storage storage the pages are loaded from
+     */
+    public ModulePager(AsyncModuleStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * sets the listener notified about loaded pages.
+     *
+     * @param listener listener, typically the adapter
+     */
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * sets how the texts of rows loaded from now on are measured, rows already cached keep their texts.
+     *
+     * @param textMeasurer measurer, must be safe to use on a background thread
+     */
+    public void setTextMeasurer(ModuleDisplayRow.TextMeasurer textMeasurer) {
+        this.textMeasurer = textMeasurer;
+    }
+
+    /**
+     * replaces the id list. cached modules stay valid as long as their content hash did not change.
+     * pages still loading for the old list are cached when they arrive and their rows are notified
+     * at their new positions, rows bound as placeholders are not rebound by the diff otherwise.
+     *
+     * @param newIdList ids of all modules in display order
+     */
+    public void setIdList(ModuleIdList newIdList) {
+        idList = newIdList;
+        loadingPages.clear();
+        generation++;
+    }
+
+    /**
+     * shows the modules of a preview until the first id list is set, they are kept in the cache like
+     * loaded modules, so the rows that did not change are not loaded again.
+     *
+     * @param preview first rows of the list
+     */
+    public void setPreview(ModulePreview preview) {
+        setIdList(preview.getIdList());
+        for (Module module : preview.getModules()) {
+            cache.put(module.getId(), new ModuleDisplayRow(module, textMeasurer));
+        }
+    }
+
+    /**
+     * @return current id list
+     */
+    public ModuleIdList getIdList() {
+        return idList;
+    }
+
+    /**
+     * @return number of modules in the list
+     */
+    public int size() {
+        return idList.size();
+    }
+
+    /**
+     * returns the row at the given position if it is loaded, otherwise starts loading its page.
+     *
+     * @param position position in the list
+     * @return the row, or null while its page is still loading
+     */
+    public ModuleDisplayRow get(int position) {
+        int page = position / PAGE_SIZE;
+        ModuleDisplayRow row = getCached(position);
+        if (row == null) {
+            loadPage(page);
+            return null;
+        }
+
+        // prefetch the neighbour page in scroll direction before it becomes visible
+        int offset = position - page * PAGE_SIZE;
+        if (offset >= PAGE_SIZE * 3 / 4) {
+            loadPage(page + 1);
+        } else if (offset < PAGE_SIZE / 4) {
+            loadPage(page - 1);
+        }
+        return row;
+    }
+
+    /**
+     * @return cached row for the position if its module is still up to date, otherwise null
+     */
+    private ModuleDisplayRow getCached(int position) {
+        ModuleDisplayRow row = cache.get(idList.getId(position));
+        if (row != null && row.getContentHash() != idList.getContentHash(position)) {
+            return null;
+        }
+        return row;
+    }
+
+    private void loadPage(int page) {
+        int from = page * PAGE_SIZE;
+        if (page < 0 || from >= idList.size() || isPageCached(page) || !loadingPages.add(page)) {
+            return;
+        }
+
+        int to = Math.min(from + PAGE_SIZE, idList.size());
+        int requestGeneration = generation;
+        ModuleDisplayRow.TextMeasurer measurer = textMeasurer;
+        storage.loadModules(idList.ids(), from, to, module -> new ModuleDisplayRow(module, measurer), rows -> {
+            if (requestGeneration != generation) {
+                onLateRowsLoaded(rows);
+                return;
+            }
+            loadingPages.remove(page);
+            onPageLoaded(from, rows);
+        });
+    }
+
+    /**
+     * caches the rows of a page loaded for an earlier id list and notifies the positions they have now.
+     * the whole id list is scanned, this only happens for loads that were running when the ids changed.
+     */
+    private void onLateRowsLoaded(List<ModuleDisplayRow> rows) {
+        Set<Long> arrived = new HashSet<>();
+        for (ModuleDisplayRow row : rows) {
+            if (row == null) {
+                continue;
+            }
+            ModuleDisplayRow cached = cache.get(row.getModule().getId());
+            if (cached == null || cached.getContentHash() != row.getContentHash()) {
+                cache.put(row.getModule().getId(), row);
+                arrived.add(row.getModule().getId());
+            }
+        }
+        if (listener == null || arrived.isEmpty()) {
+            return;
+        }
+        int runStart = -1;
+        for (int position = 0; position <= idList.size(); position++) {
+            boolean inRun = position < idList.size() && arrived.contains(idList.getId(position))
+                    && getCached(position) != null;
+            if (inRun && runStart < 0) {
+                runStart = position;
+            } else if (!inRun && runStart >= 0) {
+                listener.onPageLoaded(runStart, position - runStart);
+                runStart = -1;
+            }
+        }
+    }
+
+    private boolean isPageCached(int page) {
+        int to = Math.min((page + 1) * PAGE_SIZE, idList.size());
+        for (int position = page * PAGE_SIZE; position < to; position++) {
+            if (getCached(position) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * puts the loaded rows into the cache and notifies only the runs of positions that became available.
+     * modules that changed again since the id list was loaded stay missing until the next id list arrives.
+     */
+    private void onPageLoaded(int from, List<ModuleDisplayRow> rows) {
+        boolean[] available = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            boolean missing = getCached(from + i) == null;
+            ModuleDisplayRow row = rows.get(i);
+            if (row != null) {
+                cache.put(row.getModule().getId(), row);
+            }
+            available[i] = missing && getCached(from + i) != null;
+        }
+
+        if (listener == null) {
+            return;
+        }
+        int runStart = -1;
+        for (int i = 0; i <= available.length; i++) {
+            boolean inRun = i < available.length && available[i];
+            if (inRun && runStart < 0) {
+                runStart = i;
+            } else if (!inRun && runStart >= 0) {
+                listener.onPageLoaded(from + runStart, i - runStart);
+                runStart = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package ch.wiss.m335_lb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * catalog of the partitions the modules are grouped into, e.g. semesters or student profiles.
+ * every partition is stored on its own and only the active one is opened. for all partitions the
+ * catalog keeps a summary (number of modules, sum and number of the averages, largest id), so aggregates
+ * over all of them need no other partition to be read.
+ * the catalog is a small file that is replaced as a whole. a new partition or another active partition
+ * is written right away, changed summaries only on {@link #save()}. the last catalog that could be read
+ * is kept as a backup, a damaged catalog is rebuilt from it and from the partition directories.
+ * safe to use from any thread.
+ */
+public class ModulePartitions {
+
+    /**
+     * the partition the modules were stored in before there were partitions, it cannot be removed
+     */
+    public static final long DEFAULT_ID = 0;
+
+    private static final String CATALOG_FILE = "partitions.bin";
+    private static final String BACKUP_FILE = "partitions.bin.bak";
+    private static final String PARTITIONS_DIRECTORY = "partitions";
+    private static final int MAGIC = 0x4D335054; // "M3PT"
+    // version 1 had no largest id in the summaries
+    private static final byte VERSION = 2;
+    private static final String DEFAULT_NAME = "Standard";
+    // name of a partition that is only known from its directory
+    private static final String RECOVERED_NAME = "Semester ";
+
+    /**
+     * name and summary of one partition, instances are immutable
+     */
+    public static class Partition {
+
+        private final long id;
+        private final String name;
+        private final int moduleCount;
+        private final double gradeSum;
+        private final int gradeCount;
+        private final long maxId;
+
+        Partition(long id, String name, int moduleCount, double gradeSum, int gradeCount, long maxId) {
+            this.id = id;
+            this.name = name;
+            this.moduleCount = moduleCount;
+            this.gradeSum = gradeSum;
+            this.gradeCount = gradeCount;
+            this.maxId = maxId;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of modules at the last update of the summary
+         */
+        public int getModuleCount() {
+            return moduleCount;
+        }
+
+        /**
+         * @return average of the modules with complete grades, or null if there are none
+         */
+        public Double getAverage() {
+            return gradeCount > 0 ? gradeSum / gradeCount : null;
+        }
+
+        /**
+         * @return largest module id stored in the partition, deleted ones included, 0 if there was none
+         */
+        public long getMaxId() {
+            return maxId;
+        }
+    }
+
+    private final File directory;
+    private final File catalogFile;
+    // in creation order
+    private final Map<Long, Partition> partitions = new LinkedHashMap<>();
+    private long activeId = DEFAULT_ID;
+    // summaries changed since the catalog was written
+    private boolean dirty;
+
+    /**
+     * constructor, reads the catalog. without a catalog there is only the default partition.
+     *
+     * @param directory directory of the default partition, the other partitions are stored below it
+     */
+    public ModulePartitions(File directory) {
+        this.directory = directory;
+        this.catalogFile = new File(directory, CATALOG_FILE);
+        File backupFile = new File(directory, BACKUP_FILE);
+        if (catalogFile.exists()) {
+            if (read(catalogFile)) {
+                try {
+                    Files.copy(catalogFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                if (backupFile.exists()) {
+                    read(backupFile);
+                }
+                addPartitionDirectories();
+                dirty = true;
+            }
+        }
+        if (!partitions.containsKey(DEFAULT_ID)) {
+            partitions.put(DEFAULT_ID, new Partition(DEFAULT_ID, DEFAULT_NAME, 0, 0, 0, 0));
+        }
+        if (!partitions.containsKey(activeId)) {
+            activeId = DEFAULT_ID;
+        }
+        // the rebuilt catalog replaces the damaged one
+        save();
+    }
+
+    /**
+     * @return all partitions in creation order
+     */
+    public synchronized List<Partition> getAll() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * @return the partition, or null if there is none with this id
+     */
+    public synchronized Partition get(long id) {
+        return partitions.get(id);
+    }
+
+    public synchronized long getActiveId() {
+        return activeId;
+    }
+
+    /**
+     * @return the partition the app shows and edits
+     */
+    public synchronized Partition getActive() {
+        return partitions.get(activeId);
+    }
+
+    /**
+     * makes another partition the active one and writes the catalog.
+     *
+     * @param id id of an existing partition
+     */
+    public synchronized void setActive(long id) {
+        if (!partitions.containsKey(id)) {
+            throw new IllegalArgumentException("no partition " + id);
+        }
+        activeId = id;
+        dirty = true;
+        save();
+    }
+
+    /**
+     * creates an empty partition and writes the catalog.
+     *
+     * @param name name of the partition
+     * @return the new partition
+     */
+    public synchronized Partition add(String name) {
+        long id = DEFAULT_ID;
+        for (long existing : partitions.keySet()) {
+            id = Math.max(id, existing);
+        }
+        Partition partition = new Partition(id + 1, name, 0, 0, 0, 0);
+        partitions.put(partition.getId(), partition);
+        dirty = true;
+        save();
+        return partition;
+    }
+
+    /**
+     * replaces the summary of a partition, it is written with the next {@link #save()}.
+     *
+     * @param id id of the partition
+     * @param moduleCount number of modules
+     * @param gradeSum sum of the averages of the modules with complete grades
+     * @param gradeCount number of modules with complete grades
+     * @param maxId largest module id stored in the partition so far, 0 if there was none
+     */
+    public synchronized void updateSummary(long id, int moduleCount, double gradeSum, int gradeCount, long maxId) {
+        Partition partition = partitions.get(id);
+        if (partition == null || (partition.moduleCount == moduleCount && partition.gradeSum == gradeSum
+                && partition.gradeCount == gradeCount && partition.maxId == maxId)) {
+            return;
+        }
+        partitions.put(id, new Partition(id, partition.name, moduleCount, gradeSum, gradeCount, maxId));
+        dirty = true;
+    }
+
+    /**
+     * writes the catalog if anything changed since it was written last.
+     *
+     * @return false if the catalog could not be written
+     */
+    public synchronized boolean save() {
+        if (!dirty) {
+            return true;
+        }
+        try {
+            write();
+            dirty = false;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * returns where the modules of a partition are stored, the default partition uses the directory
+     * the modules were stored in before there were partitions.
+     *
+     * @param id id of the partition
+     * @return directory of the partition, it may not exist yet
+     */
+    public File getDirectory(long id) {
+        return id == DEFAULT_ID ? directory : new File(new File(directory, PARTITIONS_DIRECTORY), Long.toString(id));
+    }
+
+    /**
+     * @param partitions partitions to sum up
+     * @return number of modules in all of them
+     */
+    public static int getTotalCount(List<Partition> partitions) {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.moduleCount;
+        }
+        return count;
+    }
+
+    /**
+     * @param partitions partitions to sum up
+     * @return average of the modules with complete grades in all of them, or null if there are none
+     */
+    public static Double getTotalAverage(List<Partition> partitions) {
+        double sum = 0;
+        int count = 0;
+        for (Partition partition : partitions) {
+            sum += partition.gradeSum;
+            count += partition.gradeCount;
+        }
+        return count > 0 ? sum / count : null;
+    }
+
+    /**
+     * @param partitions partitions to look at
+     * @return largest module id in any of them, 0 if there is none
+     */
+    public static long getMaxId(List<Partition> partitions) {
+        long maxId = 0;
+        for (Partition partition : partitions) {
+            maxId = Math.max(maxId, partition.maxId);
+        }
+        return maxId;
+    }
+
+    /**
+     * reads a catalog, nothing of it is kept if it cannot be read completely.
+     *
+     * @return false if the catalog could not be read
+     */
+    private boolean read(File file) {
+        try {
+            readCatalog(file);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            partitions.clear();
+            activeId = DEFAULT_ID;
+            return false;
+        }
+    }
+
+    private void readCatalog(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("unknown partition catalog " + file);
+            }
+            byte version = in.readByte();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unknown partition catalog version " + version);
+            }
+            activeId = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Partition partition = new Partition(in.readLong(), in.readUTF(), in.readInt(), in.readDouble(),
+                        in.readInt(), version >= 2 ? in.readLong() : 0);
+                partitions.put(partition.getId(), partition);
+            }
+        }
+    }
+
+    /**
+     * adds the partitions that have a directory but are not in the catalog, in creation order. their
+     * summaries are empty until the partition is opened.
+     */
+    private void addPartitionDirectories() {
+        File[] files = new File(directory, PARTITIONS_DIRECTORY).listFiles(File::isDirectory);
+        if (files == null) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (File file : files) {
+            try {
+                long id = Long.parseLong(file.getName());
+                if (id > DEFAULT_ID && !partitions.containsKey(id)) {
+                    ids.add(id);
+                }
+            } catch (NumberFormatException e) {
+                // not a partition
+            }
+        }
+        Collections.sort(ids);
+        for (long id : ids) {
+            partitions.put(id, new Partition(id, RECOVERED_NAME + id, 0, 0, 0, 0));
+        }
+    }
+
+    /**
+     * writes the catalog to a temporary file first and then replaces it, so it is never half written.
+     */
+    private void write() throws IOException {
+        File tmpFile = new File(directory, CATALOG_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmpFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(activeId);
+            out.writeInt(partitions.size());
+            for (Partition partition : partitions.values()) {
+                out.writeLong(partition.id);
+                out.writeUTF(partition.name);
+                out.writeInt(partition.moduleCount);
+                out.writeDouble(partition.gradeSum);
+                out.writeInt(partition.gradeCount);
+                out.writeLong(partition.maxId);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmpFile.renameTo(catalogFile)) {
+            throw new IOException("could not replace " + catalogFile);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ch.wiss.m335_lb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * the first rows of the unfiltered list and the overall average, saved so that the main screen can show
+ * them on a cold start before the store has been opened. the file is written in the
+ * {@link ModuleBinaryCodec} format and holds only a screenful of modules, so reading it takes the same
+ * time however many modules are stored. it is only a cache: a missing or damaged file is ignored.
+ */
+public class ModulePreview {
+
+    // a screenful on large phones, the rest of the list is loaded from the store
+    public static final int ROW_COUNT = 30;
+
+    private final List<Module> modules;
+    private final Double overallAverage;
+
+    /**
+     * constructor
+     *
+     * @param modules first modules of the list in insertion order
+     * @param overallAverage overall average of all modules, or null if no module has complete grades
+     */
+    public ModulePreview(List<Module> modules, Double overallAverage) {
+        this.modules = Collections.unmodifiableList(new ArrayList<>(modules));
+        this.overallAverage = overallAverage;
+    }
+
+    /**
+     * takes the first rows and the average of the current state.
+     *
+     * @param view state of the store, should not change while this runs, e.g. a snapshot
+     * @return preview
+     */
+    public static ModulePreview create(ModuleView view) {
+        ModuleIdList idList = view.getIdList();
+        List<Module> modules = view.findByIds(idList.ids(), 0, Math.min(ROW_COUNT, idList.size()));
+        modules.removeIf(Objects::isNull);
+        return new ModulePreview(modules, view.getOverallAverage());
+    }
+
+    /**
+     * @return first modules of the list
+     */
+    public List<Module> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return ids and content hashes of the modules, to show them like a loaded list
+     */
+    public ModuleIdList getIdList() {
+        long[] ids = new long[modules.size()];
+        long[] hashes = new long[modules.size()];
+        for (int i = 0; i < modules.size(); i++) {
+            ids[i] = modules.get(i).getId();
+            hashes[i] = modules.get(i).getContentHash();
+        }
+        return new ModuleIdList(ids, hashes);
+    }
+
+    /**
+     * @return overall average of all modules, or null if no module has complete grades
+     */
+    public Double getOverallAverage() {
+        return overallAverage;
+    }
+
+    /**
+     * checks whether this preview still shows the given state, otherwise it should be saved again.
+     *
+     * @param idList unfiltered list in insertion order
+     * @param overallAverage overall average of all modules
+     * @return true if the first rows and the average are the same
+     */
+    public boolean matches(ModuleIdList idList, Double overallAverage) {
+        if (!Objects.equals(this.overallAverage, overallAverage)) {
+            return false;
+        }
+        // a preview of a short list has to show all of it
+        if (idList.size() < modules.size() || (modules.size() < ROW_COUNT && idList.size() != modules.size())) {
+            return false;
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            if (idList.getId(i) != modules.get(i).getId() || idList.getContentHash(i) != modules.get(i).getContentHash()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * writes the preview to a temporary file first and then replaces the file, so a reader never sees
+     * half of it.
+     *
+     * @param file target file
+     */
+    public void write(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            ModuleBinaryCodec.RecordWriter writer = new ModuleBinaryCodec.RecordWriter(out);
+            // the aggregate of the header holds the overall average itself, as a sum over one module
+            writer.writeHeader(modules.size(), overallAverage != null ? overallAverage : 0,
+                    overallAverage != null ? 1 : 0);
+            for (Module module : modules) {
+                writer.write(module);
+            }
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("could not replace " + file);
+        }
+    }
+
+    /**
+     * reads a preview written by {@link #write(File)}.
+     *
+     * @param file preview file
+     * @return the preview, or null if the file does not exist or is damaged
+     */
+    public static ModulePreview read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            ModuleBinaryCodec.RecordReader reader =
+                    new ModuleBinaryCodec.RecordReader(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            List<Module> modules = new ArrayList<>();
+            Module module;
+            while ((module = reader.next()) != null) {
+                modules.add(module);
+            }
+            // a partly salvaged preview would show wrong rows, the store is read anyway
+            if (!reader.isIntact() || !reader.hasAggregate()) {
+                return null;
+            }
+            return new ModulePreview(modules, reader.getGradeCount() > 0 ? reader.getGradeSum() : null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package ch.wiss.m335_lb;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * process-wide owner of the module data.
+ * holds the {@link ModuleStore} with the modules of the active partition, a {@link ModuleLog} or a
+ * {@link SqliteModuleStore} depending on the selected {@link Backend}, the {@link ModulePartitions} with the summaries of all partitions and the
+ * {@link IdAllocator}, whose ids are unique over all partitions.
+ * every {@link ModuleStorage} reads and writes through it. listeners are told which modules changed,
+ * so screens can update from memory instead of reading the store again. safe to use from any thread.
+ */
+public class ModuleRepository {
+
+    /**
+     * storage engines the modules can be kept in
+     */
+    public enum Backend {
+        LOG,
+        SQLITE
+    }
+
+    private static final String PREFS_NAME = "ModulePrefs";
+    private static final String MODULES_KEY = "modules";
+    // no id at or above this value has been handed out, the old per-id counter had the same meaning
+    private static final String NEXT_ID_KEY = "next_id";
+    // backend the app opens, see selectBackend
+    private static final String BACKEND_KEY = "backend";
+    // followed by the partition id, backend whose files hold the modules of the partition
+    private static final String DATA_BACKEND_KEY = "data_backend_";
+    private static final ModuleLog.SnapshotFormat SNAPSHOT_FORMAT = ModuleLog.SnapshotFormat.BINARY;
+    // changes within this time are written to the log together
+    private static final long WRITE_BEHIND_MILLIS = 500;
+    private static final String PREVIEW_FILE = "modules.preview.bin";
+
+    private static ModuleRepository instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Backend backend;
+    private final ModulePartitions partitions;
+    // store of the active partition, replaced when another partition is activated
+    private volatile ModuleStore store;
+    private final IdAllocator idAllocator;
+    private final List<ModuleStore.ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * returns the repository, it is opened (and the store read) on first use.
+     *
+     * @param context any context of the app
+     * @return the repository of this process
+     */
+    public static synchronized ModuleRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModuleRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ModuleRepository(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        backend = readBackend(prefs, BACKEND_KEY);
+        partitions = new ModulePartitions(context.getFilesDir());
+        long activeId = partitions.getActiveId();
+        store = openStore(activeId);
+        migrateFromPrefs(prefs, store);
+
+        // never below the largest stored id of any partition, in case the prefs were cleared while the module
+        // files were kept. the summaries may miss ids added just before the app was stopped, the active store not
+        idAllocator = new IdAllocator(new IdAllocator.Store() {
+            @Override
+            public long readHighWater(long defaultValue) {
+                return prefs.getLong(NEXT_ID_KEY, defaultValue);
+            }
+
+            @Override
+            public boolean writeHighWater(long highWater) {
+                // commit instead of apply, no id of the new block may be used before the mark is on disk
+                return prefs.edit().putLong(NEXT_ID_KEY, highWater).commit();
+            }
+        }, Math.max(store.getMaxId(), ModulePartitions.getMaxId(partitions.getAll())) + 1);
+
+        attach(store, activeId);
+    }
+
+    /**
+     * returns the backend selected with {@link #selectBackend(Context, Backend)}, the log if none was selected.
+     *
+     * @param context any context of the app
+     * @return backend the repository is opened with
+     */
+    public static Backend getSelectedBackend(Context context) {
+        return readBackend(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE), BACKEND_KEY);
+    }
+
+    /**
+     * selects the backend the modules are kept in. it is used the next time the repository is opened,
+     * i.e. after the app was restarted, and every partition is copied into it when it is opened.
+     *
+     * @param context any context of the app
+     * @param backend backend to use from now on
+     * @return false if the selection could not be saved
+     */
+    public static boolean selectBackend(Context context, Backend backend) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(BACKEND_KEY, backend.name()).commit();
+    }
+
+    private static Backend readBackend(SharedPreferences prefs, String key) {
+        try {
+            return Backend.valueOf(prefs.getString(key, Backend.LOG.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return Backend.LOG;
+        }
+    }
+
+    /**
+     * opens the store of a partition in the selected backend. if the modules of the partition are still kept
+     * by the other backend, they are copied over first.
+     */
+    private ModuleStore openStore(long partitionId) {
+        String dataBackendKey = DATA_BACKEND_KEY + partitionId;
+        // modules stored before the backend could be selected are in the log
+        Backend dataBackend = readBackend(prefs, dataBackendKey);
+        ModuleStore opened = openStore(partitionId, backend);
+        if (dataBackend == backend) {
+            return opened;
+        }
+        ModuleStore holder = migrate(openStore(partitionId, dataBackend), opened);
+        // commit instead of apply, the next start must not copy the old modules over newer changes.
+        // if the new backend cannot be recorded, the modules are kept in the old one
+        if (holder == opened && !prefs.edit().putString(dataBackendKey, backend.name()).commit()) {
+            opened.close();
+            return openStore(partitionId, dataBackend);
+        }
+        return holder;
+    }
+
+    /**
+     * opens the store of a partition in the given backend, the default partition keeps the files it had
+     * before there were partitions.
+     */
+    private ModuleStore openStore(long partitionId, Backend storeBackend) {
+        if (storeBackend == Backend.LOG) {
+            return new ModuleLog(partitions.getDirectory(partitionId), SNAPSHOT_FORMAT, WRITE_BEHIND_MILLIS);
+        }
+        if (partitionId != ModulePartitions.DEFAULT_ID) {
+            return new SqliteModuleStore(context, "modules-" + partitionId + ".db");
+        }
+        return new SqliteModuleStore(context);
+    }
+
+    /**
+     * replaces the modules of one store with those of another and closes the store that does not hold them.
+     * the files of the source are kept as they are.
+     *
+     * @param source store holding the modules
+     * @param target store of another backend
+     * @return target if the modules were written to it, source if writing failed, the copy is then tried
+     *         again the next time the partition is opened
+     */
+    static ModuleStore migrate(ModuleStore source, ModuleStore target) {
+        boolean copied = false;
+        try {
+            copied = target.resetTo(source.getAll());
+        } finally {
+            if (copied) {
+                source.close();
+            } else {
+                target.close();
+            }
+        }
+        return copied ? target : source;
+    }
+
+    /**
+     * forwards the changes of a partition's store to the listeners and keeps its summary up to date.
+     */
+    private void attach(ModuleStore partitionStore, long partitionId) {
+        updateSummary(partitionStore, partitionId, null);
+        partitionStore.setChangeListener(ids -> {
+            updateSummary(partitionStore, partitionId, ids);
+            for (ModuleStore.ChangeListener listener : listeners) {
+                listener.onModulesChanged(ids);
+            }
+        });
+    }
+
+    /**
+     * @param ids changed ids, null if all modules may have changed
+     */
+    private void updateSummary(ModuleStore partitionStore, long partitionId, long[] ids) {
+        // only the changed ids can raise the largest id, all modules are only looked at for full changes
+        long maxId = partitions.get(partitionId).getMaxId();
+        if (ids == null) {
+            maxId = Math.max(maxId, partitionStore.getMaxId());
+        } else {
+            for (long id : ids) {
+                maxId = Math.max(maxId, id);
+            }
+        }
+        Double average = partitionStore.getOverallAverage();
+        int gradedCount = partitionStore.getGradedCount();
+        partitions.updateSummary(partitionId, partitionStore.size(),
+                average != null ? average * gradedCount : 0, gradedCount, maxId);
+    }
+
+    /**
+     * moves modules stored under the old {@code modules} json key into the store, once.
+     * the key is only removed when the store has written the modules, otherwise it is tried again on the next start.
+     */
+    private static void migrateFromPrefs(SharedPreferences prefs, ModuleStore store) {
+        String jsonString = prefs.getString(MODULES_KEY, null);
+        if (jsonString == null) {
+            return;
+        }
+
+        try {
+            if (store.isEmpty()) {
+                ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(jsonString));
+                List<Module> modules = new ArrayList<>();
+                Module module;
+                while ((module = reader.next()) != null) {
+                    modules.add(module);
+                }
+                if (!store.resetTo(modules)) {
+                    return;
+                }
+            }
+            prefs.edit().remove(MODULES_KEY).apply();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * returns the file of the {@link ModulePreview}, without opening the repository.
+     *
+     * @param context any context of the app
+     * @return preview file
+     */
+    public static File getPreviewFile(Context context) {
+        return new File(context.getFilesDir(), PREVIEW_FILE);
+    }
+
+    /**
+     * @return store of the active partition, it changes when another partition is activated
+     */
+    public ModuleStore getStore() {
+        return store;
+    }
+
+    public ModulePartitions getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * closes the store of the active partition and opens the one of another partition, which is read
+     * only now. the listeners are told that all modules changed. must be called on the thread that makes
+     * the other storage calls, they would fail on the closed store.
+     *
+     * @param partitionId id of the partition to activate
+     * @return false if there is no such partition
+     */
+    public synchronized boolean activatePartition(long partitionId) {
+        if (partitions.get(partitionId) == null) {
+            return false;
+        }
+        if (partitionId == partitions.getActiveId()) {
+            return true;
+        }
+
+        ModuleStore previous = store;
+        previous.setChangeListener(null);
+        previous.close();
+        ModuleStore next = openStore(partitionId);
+        attach(next, partitionId);
+        store = next;
+        partitions.setActive(partitionId);
+
+        for (ModuleStore.ChangeListener listener : listeners) {
+            listener.onModulesChanged(null);
+        }
+        return true;
+    }
+
+    /**
+     * writes the changes held back by the store and the summaries of the partitions.
+     */
+    public void flush() {
+        store.flush();
+        partitions.save();
+    }
+
+    public IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * registers a listener for changes of any module. it is called on the thread that made the change,
+     * while the store is locked, so it must only hand the ids over and not block.
+     *
+     * @param listener listener to add
+     */
+    public void addChangeListener(ModuleStore.ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removeChangeListener(ModuleStore.ChangeListener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,28 @@
+package ch.wiss.m335_lb;
+
+/**
+ * read-only view of the values of one module needed for display and grade calculations.
+ * implemented by {@link Module} and by the row view of {@link ModuleTable}, so callers do not need a
+ * {@link Module} object per row.
+ */
+public interface ModuleRow {
+
+    String getModulnummer();
+
+    String getModultitel();
+
+    /**
+     * @return true if both grades are present
+     */
+    boolean hasCompleteGrades();
+
+    /**
+     * @return true if at least one grade is present
+     */
+    boolean hasAnyGrade();
+
+    /**
+     * @return average of both grades, NaN if they are not complete
+     */
+    double getAverageGrade();
+}
@@ -0,0 +1,267 @@
+package ch.wiss.m335_lb;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * search index over modulnummer and modultitel, updated on every change instead of scanning all modules.
+ * module numbers are kept in a sorted map for prefix lookups, titles are split into tokens that point to
+ * the ids of the modules containing them (inverted index). text is normalized to lower case without
+ * accents, so "Ubung" finds "Übung", and ß is folded to "ss". not thread safe.
+ */
+public class ModuleSearchIndex {
+
+    // normalized modulnummer -> ids, sorted so a prefix is a contiguous range
+    private final TreeMap<String, Postings> numbers = new TreeMap<>();
+    // normalized title token -> ids
+    private final TreeMap<String, Postings> tokens = new TreeMap<>();
+
+    /**
+     * adds a module to the index.
+     *
+     * @param id module id
+     * @param modulnummer module number, may be null
+     * @param modultitel module title, may be null
+     */
+    public void add(long id, String modulnummer, String modultitel) {
+        String number = normalizeNumber(modulnummer);
+        if (!number.isEmpty()) {
+            postings(numbers, number).add(id);
+        }
+        for (String token : tokenize(modultitel)) {
+            postings(tokens, token).add(id);
+        }
+    }
+
+    /**
+     * removes a module, must be called with the values it was added with.
+     *
+     * @param id module id
+     * @param modulnummer module number it was added with
+     * @param modultitel module title it was added with
+     */
+    public void remove(long id, String modulnummer, String modultitel) {
+        String number = normalizeNumber(modulnummer);
+        if (!number.isEmpty()) {
+            removePosting(numbers, number, id);
+        }
+        for (String token : tokenize(modultitel)) {
+            removePosting(tokens, token, id);
+        }
+    }
+
+    /**
+     * removes all modules.
+     */
+    public void clear() {
+        numbers.clear();
+        tokens.clear();
+    }
+
+    /**
+     * finds the modules matching every word of the query. a word matches a module if its number or
+     * one of its title words starts with it, so the last, half typed word of the query already matches.
+     *
+     * @param query search text as typed by the user
+     * @return ids of the matching modules in ascending order, null if the query contains no words
+     */
+    public long[] search(String query) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        long[] result = null;
+        for (String word : words) {
+            long[] matches = collect(word);
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return sorted, distinct ids of all modules whose number or a title token starts with the word
+     */
+    private long[] collect(String word) {
+        Postings all = new Postings();
+        // a number is typed without spaces, so it only has to match the normalized number
+        for (Postings postings : prefixRange(numbers, word).values()) {
+            all.addAll(postings);
+        }
+        for (Postings postings : prefixRange(tokens, word).values()) {
+            all.addAll(postings);
+        }
+
+        long[] ids = Arrays.copyOf(all.ids, all.size);
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    private static NavigableMap<String, Postings> prefixRange(TreeMap<String, Postings> map, String prefix) {
+        // every string starting with the prefix sorts before prefix + the highest char
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static Postings postings(Map<String, Postings> map, String key) {
+        Postings postings = map.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            map.put(key, postings);
+        }
+        return postings;
+    }
+
+    private static void removePosting(Map<String, Postings> map, String key, long id) {
+        Postings postings = map.get(key);
+        if (postings != null && postings.remove(id) && postings.size == 0) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * folds text for comparison: lower case, umlauts and accents reduced to their base letter, ß to ss.
+     *
+     * @param text text to fold
+     * @return folded text, empty for null
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (isPlainAscii(lower)) {
+            return lower;
+        }
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (c == 'ß') {
+                folded.append("ss");
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * @return folded module number without whitespace, e.g. "m 335" becomes "m335"
+     */
+    static String normalizeNumber(String modulnummer) {
+        String folded = fold(modulnummer);
+        StringBuilder number = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                number.append(c);
+            }
+        }
+        return number.toString();
+    }
+
+    /**
+     * splits folded text into words of letters and digits.
+     *
+     * @param text text to split, may be null
+     * @return distinct words in order of appearance
+     */
+    static List<String> tokenize(String text) {
+        String folded = fold(text);
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = folded.substring(start, i);
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean isPlainAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * growable array of ids, without a boxed object per id.
+     */
+    private static class Postings {
+
+        long[] ids = new long[4];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(Postings other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + other.size, ids.length * 2));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * removes one occurrence of the id, the last id takes its place.
+         */
+        boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ch.wiss.m335_lb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * immutable state of all modules at one version of the {@link ModuleLog}.
+ * the log publishes a new snapshot after every change, a batch is published once as a whole, so readers
+ * on any thread see a consistent state without locking the log and never wait for a writer. unchanged
+ * rows are shared with the log's table, see {@link ModuleTable#snapshot()}.
+ */
+public class ModuleSnapshot implements ModuleView {
+
+    private final long version;
+    private final ModuleTable table;
+    private final double gradeSum;
+    private final int gradeCount;
+    // copied from the log on first use, most versions are never asked for statistics
+    private volatile ModuleStatistics statistics;
+
+    /**
+     * constructor
+     *
+     * @param version version of the log, grows with every published change
+     * @param table frozen table, see {@link ModuleTable#snapshot()}
+     * @param gradeSum sum of the averages of all modules with complete grades
+     * @param gradeCount number of modules with complete grades
+     */
+    ModuleSnapshot(long version, ModuleTable table, double gradeSum, int gradeCount) {
+        this.version = version;
+        this.table = table;
+        this.gradeSum = gradeSum;
+        this.gradeCount = gradeCount;
+    }
+
+    /**
+     * @return version of the log this snapshot was taken at, a larger version is a later state
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of modules
+     */
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    /**
+     * returns copies of all modules in insertion order.
+     *
+     * @return List of modules
+     */
+    @Override
+    public List<Module> getAll() {
+        List<Module> result = new ArrayList<>(table.size());
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                result.add(table.toModule(row));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return largest id of the modules, or 0 if there are none
+     */
+    @Override
+    public long getMaxId() {
+        long maxId = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                maxId = Math.max(maxId, table.getId(row));
+            }
+        }
+        return maxId;
+    }
+
+    /**
+     * returns the ids and content hashes of all modules in insertion order, without copying any module.
+     *
+     * @return id list
+     */
+    @Override
+    public ModuleIdList getIdList() {
+        long[] ids = new long[table.size()];
+        long[] hashes = new long[table.size()];
+        int i = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                ids[i] = table.getId(row);
+                hashes[i] = table.getContentHash(row);
+                i++;
+            }
+        }
+        return new ModuleIdList(ids, hashes);
+    }
+
+    /**
+     * looks up a single module by its id.
+     *
+     * @param id id of the module
+     * @return copy of the module, or null if no module has this id
+     */
+    @Override
+    public Module findById(long id) {
+        int row = table.indexOf(id);
+        return row >= 0 ? table.toModule(row) : null;
+    }
+
+    /**
+     * returns copies of the modules with the given ids.
+     *
+     * @param ids array of ids
+     * @param from first index in {@code ids}, inclusive
+     * @param to last index in {@code ids}, exclusive
+     * @return modules in the order of {@code ids}, null for ids that do not exist in this version
+     */
+    @Override
+    public List<Module> findByIds(long[] ids, int from, int to) {
+        List<Module> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int row = table.indexOf(ids[i]);
+            result.add(row >= 0 ? table.toModule(row) : null);
+        }
+        return result;
+    }
+
+    /**
+     * @return average of all modules that have both grades, or null if there is none
+     */
+    @Override
+    public Double getOverallAverage() {
+        return gradeCount > 0 ? gradeSum / gradeCount : null;
+    }
+
+    @Override
+    public int getGradedCount() {
+        return gradeCount;
+    }
+
+    /**
+     * returns the grade statistics of this version. the log hands over a copy of its maintained
+     * statistics while this is its current version, a version that never got one builds them from its rows.
+     *
+     * @return statistics shared with the other readers of this version, they must not be changed
+     */
+    @Override
+    public ModuleStatistics getStatistics() {
+        ModuleStatistics published = statistics;
+        if (published != null) {
+            return published;
+        }
+        synchronized (this) {
+            if (statistics == null) {
+                ModuleStatistics built = new ModuleStatistics();
+                built.beginBulkUpdate();
+                ModuleTable.Row view = table.newRow();
+                for (int row = 0; row < table.getRowCount(); row++) {
+                    if (table.isLive(row)) {
+                        built.add(view.moveTo(row));
+                    }
+                }
+                // sorted before it is shared, readers then only read
+                built.getCount();
+                statistics = built;
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * @return statistics handed over by the log, or null if there are none yet
+     */
+    ModuleStatistics getPublishedStatistics() {
+        return statistics;
+    }
+
+    /**
+     * hands over the statistics of this version, called by the log while it is locked.
+     *
+     * @param statistics sorted copy of the log's statistics, see {@link ModuleStatistics#ModuleStatistics(ModuleStatistics)}
+     */
+    void publishStatistics(ModuleStatistics statistics) {
+        this.statistics = statistics;
+    }
+}
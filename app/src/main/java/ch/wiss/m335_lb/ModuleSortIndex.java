@@ -0,0 +1,360 @@
+package ch.wiss.m335_lb;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * sorted orders over the modules of a {@link ModuleTable}, with the sort keys computed once per change.
+ * each order keeps the ids sorted by a primitive primary key and a string secondary key, e.g. the average
+ * and the module number. titles are compared through german collation keys, module numbers with their
+ * digits padded so that m99 sorts before m100. an order is only built the first time it is requested and
+ * then updated with a binary search on every change. not thread safe.
+ */
+public class ModuleSortIndex {
+
+    /**
+     * orders the module list can be sorted by
+     */
+    public enum SortOrder {
+        INSERTION,
+        NUMBER,
+        TITLE,
+        AVERAGE,
+        COMPLETENESS
+    }
+
+    private static final int NUMBER_DIGITS = 10;
+    // primary key of modules that cannot be ranked in an order
+    private static final double UNRANKED = Double.POSITIVE_INFINITY;
+
+    private final ModuleTable table;
+    private final Collator collator = Collator.getInstance(Locale.GERMAN);
+    // null until the order is requested for the first time
+    private final SortedIds[] orders = new SortedIds[SortOrder.values().length];
+
+    /**
+     * constructor
+     *
+     * @param table table the keys are read from
+     */
+    public ModuleSortIndex(ModuleTable table) {
+        this.table = table;
+        collator.setStrength(Collator.SECONDARY);
+    }
+
+    /**
+     * adds a row to all orders that have been built, call after the row has been written.
+     *
+     * @param row row index
+     */
+    public void add(int row) {
+        for (SortOrder order : SortOrder.values()) {
+            SortedIds ids = orders[order.ordinal()];
+            if (ids != null) {
+                ids.insert(primaryKey(order, row), secondaryKey(order, row), table.getId(row));
+            }
+        }
+    }
+
+    /**
+     * removes a row from all orders that have been built, call before the row is changed or deleted.
+     *
+     * @param row row index
+     */
+    public void remove(int row) {
+        for (SortOrder order : SortOrder.values()) {
+            SortedIds ids = orders[order.ordinal()];
+            if (ids != null) {
+                ids.remove(primaryKey(order, row), secondaryKey(order, row), table.getId(row));
+            }
+        }
+    }
+
+    /**
+     * drops all orders, e.g. after the table was replaced as a whole. they are rebuilt on the next request.
+     */
+    public void invalidate() {
+        Arrays.fill(orders, null);
+    }
+
+    /**
+     * returns the ids of all modules in the given order, building the order if needed.
+     *
+     * @param order sort order, not {@link SortOrder#INSERTION}
+     * @return ids in ascending order, only the first {@code table.size()} entries are valid, must not be modified
+     */
+    public long[] getIds(SortOrder order) {
+        if (order == SortOrder.INSERTION) {
+            throw new IllegalArgumentException("insertion order is the order of the table itself");
+        }
+        SortedIds ids = orders[order.ordinal()];
+        if (ids == null) {
+            ids = build(order);
+            orders[order.ordinal()] = ids;
+        }
+        return ids.ids;
+    }
+
+    /**
+     * returns the number of modules that have a key in the given order, they come before the ones
+     * without (e.g. modules without an average). a reversed list keeps the ones without a key at the end.
+     *
+     * @param order sort order, not {@link SortOrder#INSERTION}
+     * @return number of leading ids with a key
+     */
+    public int getRankedCount(SortOrder order) {
+        return lowerBound(order, UNRANKED);
+    }
+
+    /**
+     * returns the first index in the given order whose primary key is at least the given one.
+     * for {@link SortOrder#AVERAGE} the primary key is the average, so a grade range maps to a range of indexes.
+     *
+     * @param order sort order, not {@link SortOrder#INSERTION}
+     * @param primaryKey primary key to look for
+     * @return index in {@link #getIds(SortOrder)}, its size if all keys are smaller
+     */
+    public int lowerBound(SortOrder order, double primaryKey) {
+        return firstIndex(order, primaryKey, false);
+    }
+
+    /**
+     * returns the first index in the given order whose primary key is greater than the given one.
+     *
+     * @param order sort order, not {@link SortOrder#INSERTION}
+     * @param primaryKey primary key to look for
+     * @return index in {@link #getIds(SortOrder)}, its size if no key is greater
+     */
+    public int upperBound(SortOrder order, double primaryKey) {
+        return firstIndex(order, primaryKey, true);
+    }
+
+    /**
+     * returns the index of a module in the given order, so a few modules can be sorted without walking
+     * the whole order.
+     *
+     * @param order sort order, not {@link SortOrder#INSERTION}
+     * @param row row index of a module in the table
+     * @return index in {@link #getIds(SortOrder)}, negative if the module is not in the order
+     */
+    public int rankOf(SortOrder order, int row) {
+        getIds(order);
+        return orders[order.ordinal()].search(primaryKey(order, row), secondaryKey(order, row), table.getId(row));
+    }
+
+    private int firstIndex(SortOrder order, double primaryKey, boolean greater) {
+        getIds(order);
+        SortedIds ids = orders[order.ordinal()];
+        int low = 0;
+        int high = ids.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (greater ? ids.primary[mid] <= primaryKey : ids.primary[mid] < primaryKey) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private SortedIds build(SortOrder order) {
+        int size = table.size();
+        double[] primary = new double[size];
+        String[] secondary = new String[size];
+        long[] ids = new long[size];
+        int i = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                primary[i] = primaryKey(order, row);
+                secondary[i] = secondaryKey(order, row);
+                ids[i] = table.getId(row);
+                i++;
+            }
+        }
+
+        int[] permutation = new int[size];
+        for (i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        mergeSort(permutation, new int[size], 0, size, primary, secondary, ids);
+
+        SortedIds sorted = new SortedIds(Math.max(16, size));
+        for (i = 0; i < size; i++) {
+            int from = permutation[i];
+            sorted.primary[i] = primary[from];
+            sorted.secondary[i] = secondary[from];
+            sorted.ids[i] = ids[from];
+        }
+        sorted.size = size;
+        return sorted;
+    }
+
+    private double primaryKey(SortOrder order, int row) {
+        switch (order) {
+            case AVERAGE:
+                double average = (table.getNote1(row) + table.getNote2(row)) / 2.0;
+                return Double.isNaN(average) ? UNRANKED : average;
+            case COMPLETENESS:
+                boolean hasNote1 = !Double.isNaN(table.getNote1(row));
+                boolean hasNote2 = !Double.isNaN(table.getNote2(row));
+                return hasNote1 && hasNote2 ? 0 : hasNote1 || hasNote2 ? 1 : 2;
+            default:
+                return 0;
+        }
+    }
+
+    private String secondaryKey(SortOrder order, int row) {
+        if (order == SortOrder.TITLE) {
+            return collationKey(table.getModultitel(row));
+        }
+        return numberKey(table.getModulnummer(row));
+    }
+
+    /**
+     * @return collation key bytes packed into a string, so plain {@link String#compareTo} sorts by it
+     */
+    private String collationKey(String text) {
+        byte[] bytes = collator.getCollationKey(text != null ? text : "").toByteArray();
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * folds a module number and pads every run of digits, so numbers compare by value.
+     *
+     * @param modulnummer module number, may be null
+     * @return sort key, e.g. "m0000000335" for "M335"
+     */
+    static String numberKey(String modulnummer) {
+        String folded = ModuleSearchIndex.fold(modulnummer);
+        StringBuilder key = new StringBuilder(folded.length() + NUMBER_DIGITS);
+        int i = 0;
+        while (i < folded.length()) {
+            if (!Character.isDigit(folded.charAt(i))) {
+                key.append(folded.charAt(i++));
+                continue;
+            }
+            int start = i;
+            while (i < folded.length() && Character.isDigit(folded.charAt(i))) {
+                i++;
+            }
+            for (int pad = i - start; pad < NUMBER_DIGITS; pad++) {
+                key.append('0');
+            }
+            key.append(folded, start, i);
+        }
+        return key.toString();
+    }
+
+    private static int compare(double primaryA, String secondaryA, long idA,
+                               double primaryB, String secondaryB, long idB) {
+        int result = Double.compare(primaryA, primaryB);
+        if (result == 0) {
+            result = secondaryA.compareTo(secondaryB);
+        }
+        if (result == 0) {
+            result = Long.compare(idA, idB);
+        }
+        return result;
+    }
+
+    /**
+     * stable merge sort of positions, avoids boxing them for {@link Arrays#sort(Object[])}.
+     */
+    private static void mergeSort(int[] positions, int[] buffer, int from, int to,
+                                  double[] primary, String[] secondary, long[] ids) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, primary, secondary, ids);
+        mergeSort(positions, buffer, middle, to, primary, secondary, ids);
+
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(
+                    primary[buffer[left]], secondary[buffer[left]], ids[buffer[left]],
+                    primary[buffer[right]], secondary[buffer[right]], ids[buffer[right]]) <= 0)) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * ids sorted by (primary, secondary, id) in parallel arrays, the id makes every entry unique.
+     */
+    private static class SortedIds {
+
+        double[] primary;
+        String[] secondary;
+        long[] ids;
+        int size;
+
+        SortedIds(int capacity) {
+            primary = new double[capacity];
+            secondary = new String[capacity];
+            ids = new long[capacity];
+        }
+
+        void insert(double primaryKey, String secondaryKey, long id) {
+            if (size == ids.length) {
+                primary = Arrays.copyOf(primary, size * 2);
+                secondary = Arrays.copyOf(secondary, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int index = search(primaryKey, secondaryKey, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            System.arraycopy(primary, index, primary, index + 1, size - index);
+            System.arraycopy(secondary, index, secondary, index + 1, size - index);
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            primary[index] = primaryKey;
+            secondary[index] = secondaryKey;
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(double primaryKey, String secondaryKey, long id) {
+            int index = search(primaryKey, secondaryKey, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(primary, index + 1, primary, index, size - index - 1);
+            System.arraycopy(secondary, index + 1, secondary, index, size - index - 1);
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            secondary[size] = null;
+        }
+
+        /**
+         * @return index of the entry, or (-(insertion point) - 1) like {@link Arrays#binarySearch}
+         */
+        private int search(double primaryKey, String secondaryKey, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int result = compare(primary[mid], secondary[mid], ids[mid], primaryKey, secondaryKey, id);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package ch.wiss.m335_lb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * incrementally maintained distribution statistics over the averages of modules with complete grades.
+ * all values are kept in primitive arrays: a sorted {@code double[]} for min, max and percentiles,
+ * an {@code int[]} histogram and sums per modulnummer prefix. not thread safe, but a copy that is no longer
+ * changed may be read from any thread.
+ */
+public class ModuleStatistics {
+
+    public static final double MIN_GRADE = 1.0;
+    public static final double MAX_GRADE = 6.0;
+    public static final double BUCKET_WIDTH = 0.5;
+    public static final int BUCKET_COUNT = (int) ((MAX_GRADE - MIN_GRADE) / BUCKET_WIDTH);
+
+    // sorted ascending, unless a bulk update is running
+    private double[] values = new double[16];
+    private int size;
+    private boolean sorted = true;
+    // values removed during a bulk update, subtracted when the values are sorted again
+    private double[] pendingRemovals = new double[0];
+    private int pendingRemovalCount;
+
+    private double sum;
+    private final int[] histogram = new int[BUCKET_COUNT];
+
+    // prefix -> slot in the per-prefix arrays, only one entry per prefix
+    private final Map<String, Integer> prefixSlots = new HashMap<>();
+    private String[] prefixes = new String[8];
+    private double[] prefixSums = new double[8];
+    private int[] prefixCounts = new int[8];
+
+    /**
+     * creates empty statistics
+     */
+    public ModuleStatistics() {
+    }
+
+    /**
+     * copy constructor, e.g. to hand a consistent copy to another thread. the copy is sorted, so reading
+     * it does not change it.
+     *
+     * @param other statistics to copy
+     */
+    public ModuleStatistics(ModuleStatistics other) {
+        other.ensureSorted();
+        values = Arrays.copyOf(other.values, Math.max(16, other.size));
+        size = other.size;
+        sum = other.sum;
+        System.arraycopy(other.histogram, 0, histogram, 0, BUCKET_COUNT);
+        prefixSlots.putAll(other.prefixSlots);
+        prefixes = other.prefixes.clone();
+        prefixSums = other.prefixSums.clone();
+        prefixCounts = other.prefixCounts.clone();
+    }
+
+    /**
+     * adds a module, modules without complete grades are ignored.
+     *
+     * @param module module to add
+     */
+    public void add(ModuleRow module) {
+        if (module != null && module.hasCompleteGrades()) {
+            add(module.getModulnummer(), module.getAverageGrade());
+        }
+    }
+
+    /**
+     * removes a module that was added before, modules without complete grades are ignored.
+     *
+     * @param module module to remove
+     */
+    public void remove(ModuleRow module) {
+        if (module != null && module.hasCompleteGrades()) {
+            remove(module.getModulnummer(), module.getAverageGrade());
+        }
+    }
+
+    /**
+     * adds one average.
+     *
+     * @param modulnummer module number used for the prefix breakdown
+     * @param average average grade of the module
+     */
+    public void add(String modulnummer, double average) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (sorted) {
+            int index = insertionPoint(average);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = average;
+        } else {
+            values[size] = average;
+        }
+        size++;
+
+        sum += average;
+        histogram[bucketOf(average)]++;
+        int slot = prefixSlot(prefixOf(modulnummer));
+        prefixSums[slot] += average;
+        prefixCounts[slot]++;
+    }
+
+    /**
+     * removes one average that was added before.
+     *
+     * @param modulnummer module number the average was added with
+     * @param average average grade of the module
+     */
+    public void remove(String modulnummer, double average) {
+        if (sorted) {
+            int index = Arrays.binarySearch(values, 0, size, average);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        } else {
+            if (pendingRemovalCount == pendingRemovals.length) {
+                pendingRemovals = Arrays.copyOf(pendingRemovals, Math.max(16, pendingRemovalCount * 2));
+            }
+            pendingRemovals[pendingRemovalCount++] = average;
+        }
+
+        sum -= average;
+        histogram[bucketOf(average)]--;
+        Integer slot = prefixSlots.get(prefixOf(modulnummer));
+        if (slot != null) {
+            prefixSums[slot] -= average;
+            prefixCounts[slot]--;
+        }
+    }
+
+    /**
+     * starts a bulk update, e.g. while loading the store. values are only appended until the next
+     * query sorts them once, instead of keeping them sorted on every add.
+     */
+    public void beginBulkUpdate() {
+        sorted = false;
+    }
+
+    /**
+     * removes all values.
+     */
+    public void clear() {
+        size = 0;
+        sorted = true;
+        pendingRemovalCount = 0;
+        sum = 0;
+        Arrays.fill(histogram, 0);
+        prefixSlots.clear();
+        Arrays.fill(prefixCounts, 0);
+        Arrays.fill(prefixSums, 0);
+    }
+
+    /**
+     * @return number of averages
+     */
+    public int getCount() {
+        ensureSorted();
+        return size;
+    }
+
+    /**
+     * @return mean of all averages, NaN if there are none
+     */
+    public double getMean() {
+        int count = getCount();
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    /**
+     * @return smallest average, NaN if there are none
+     */
+    public double getMin() {
+        ensureSorted();
+        return size > 0 ? values[0] : Double.NaN;
+    }
+
+    /**
+     * @return largest average, NaN if there are none
+     */
+    public double getMax() {
+        ensureSorted();
+        return size > 0 ? values[size - 1] : Double.NaN;
+    }
+
+    /**
+     * @return median of all averages, NaN if there are none
+     */
+    public double getMedian() {
+        return getPercentile(50);
+    }
+
+    /**
+     * calculates a percentile with linear interpolation between the closest ranks.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return the percentile, NaN if there are no averages
+     */
+    public double getPercentile(double percentile) {
+        ensureSorted();
+        if (size == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(100, percentile)) / 100.0 * (size - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(lower + 1, size - 1);
+        return values[lower] + (rank - lower) * (values[upper] - values[lower]);
+    }
+
+    /**
+     * returns the number of averages per 0.5 bucket from 1.0 to 6.0.
+     * bucket {@code i} covers {@code [1.0 + i * 0.5, 1.5 + i * 0.5)}, the last one includes 6.0.
+     *
+     * @return copy of the histogram
+     */
+    public int[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * @param bucket index of a histogram bucket
+     * @return lower bound of the bucket
+     */
+    public static double getBucketStart(int bucket) {
+        return MIN_GRADE + bucket * BUCKET_WIDTH;
+    }
+
+    /**
+     * returns the mean average per modulnummer prefix (letters and first digit, e.g. {@code m1} for m1xx).
+     *
+     * @return prefix to mean, in order of first appearance, prefixes without averages are left out
+     */
+    public Map<String, Double> getAveragesByPrefix() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int slot = 0; slot < prefixSlots.size(); slot++) {
+            if (prefixCounts[slot] > 0) {
+                result.put(prefixes[slot], prefixSums[slot] / prefixCounts[slot]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * extracts the grouping prefix of a module number: the leading letters plus the first digit.
+     *
+     * @param modulnummer module number, e.g. "M335"
+     * @return prefix in lower case, e.g. "m3"
+     */
+    public static String prefixOf(String modulnummer) {
+        if (modulnummer == null) {
+            return "";
+        }
+        String normalized = modulnummer.trim().toLowerCase(Locale.ROOT);
+        int end = 0;
+        while (end < normalized.length() && Character.isLetter(normalized.charAt(end))) {
+            end++;
+        }
+        if (end < normalized.length() && Character.isDigit(normalized.charAt(end))) {
+            end++;
+        }
+        return normalized.substring(0, end);
+    }
+
+    private static int bucketOf(double average) {
+        int bucket = (int) Math.floor((average - MIN_GRADE) / BUCKET_WIDTH);
+        return Math.max(0, Math.min(BUCKET_COUNT - 1, bucket));
+    }
+
+    private int prefixSlot(String prefix) {
+        Integer slot = prefixSlots.get(prefix);
+        if (slot != null) {
+            return slot;
+        }
+
+        int newSlot = prefixSlots.size();
+        if (newSlot == prefixes.length) {
+            prefixes = Arrays.copyOf(prefixes, newSlot * 2);
+            prefixSums = Arrays.copyOf(prefixSums, newSlot * 2);
+            prefixCounts = Arrays.copyOf(prefixCounts, newSlot * 2);
+        }
+        prefixes[newSlot] = prefix;
+        prefixSlots.put(prefix, newSlot);
+        return newSlot;
+    }
+
+    /**
+     * @return first index whose value is greater than the given one
+     */
+    private int insertionPoint(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * sorts the values after a bulk update and subtracts the removals collected meanwhile.
+     */
+    private void ensureSorted() {
+        if (sorted) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        Arrays.sort(pendingRemovals, 0, pendingRemovalCount);
+
+        int kept = 0;
+        int removal = 0;
+        for (int i = 0; i < size; i++) {
+            double value = values[i];
+            while (removal < pendingRemovalCount && pendingRemovals[removal] < value) {
+                removal++;
+            }
+            if (removal < pendingRemovalCount && pendingRemovals[removal] == value) {
+                removal++;
+                continue;
+            }
+            values[kept++] = value;
+        }
+        size = kept;
+        pendingRemovalCount = 0;
+        sorted = true;
+    }
+}
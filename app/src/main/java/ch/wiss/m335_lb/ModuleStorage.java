@@ -1,54 +1,71 @@
 package ch.wiss.m335_lb;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import java.util.ArrayList;
+import android.os.Trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 /**
- * utility class for local storage of module data using ***SharedPreferences*** as specified in the exam papers.
- * handles serialization and persistence of module objects.
+ * utility class for local storage of module data.
+ * module records of the active partition are kept in the {@link ModuleStore} shared through the
+ * {@link ModuleRepository},
+ * ***SharedPreferences*** as specified in the exam papers only hold the high-water mark of the
+ * {@link IdAllocator} (and the old json blob until it has been migrated).
  */
 public class ModuleStorage {
     
-    private static final String PREFS_NAME = "ModulePrefs";
-    private static final String MODULES_KEY = "modules";
-    private static final String NEXT_ID_KEY = "next_id";
+    // durations of the calls and the number of modules they read or write, see Metrics#dump
+    private static final Metrics.Histogram LOAD_TIME = Metrics.getInstance().timer("storage.loadModules");
+    private static final Metrics.Histogram LOAD_SIZE = Metrics.getInstance().histogram("storage.loadModules.size");
+    private static final Metrics.Histogram PAGE_TIME = Metrics.getInstance().timer("storage.loadPage");
+    private static final Metrics.Histogram PAGE_SIZE = Metrics.getInstance().histogram("storage.loadPage.size");
+    private static final Metrics.Histogram QUERY_TIME = Metrics.getInstance().timer("storage.loadIdList");
+    private static final Metrics.Histogram QUERY_SIZE = Metrics.getInstance().histogram("storage.loadIdList.size");
+    private static final Metrics.Histogram SAVE_TIME = Metrics.getInstance().timer("storage.saveModules");
+    private static final Metrics.Histogram SAVE_SIZE = Metrics.getInstance().histogram("storage.saveModules.size");
+    private static final Metrics.Histogram BATCH_TIME = Metrics.getInstance().timer("storage.upsertAll");
+    private static final Metrics.Histogram BATCH_SIZE = Metrics.getInstance().histogram("storage.upsertAll.size");
     
-    private final SharedPreferences prefs;
+    private final ModuleRepository repository;
+    private final IdAllocator idAllocator;
+    private final File previewFile;
     
     /**
-     * constructor initializing SharedPreferences for the given context.
+     * constructor, opens the shared repository on first use.
      * 
      * @param context Application context for accessing SharedPreferences
      */
     public ModuleStorage(Context context) {
-        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.repository = ModuleRepository.getInstance(context);
+        this.idAllocator = repository.getIdAllocator();
+        this.previewFile = ModuleRepository.getPreviewFile(context);
+    }
+
+    /**
+     * @return store of the active partition, looked up per call since another partition may be activated
+     */
+    private ModuleStore store() {
+        return repository.getStore();
     }
     
     /**
      * saves a list of modules to local storage.
+     * only modules that were added, changed or removed are written.
      * 
      * @param modules List of modules to save
      */
     public void saveModules(List<Module> modules) {
+        Trace.beginSection("ModuleStorage.saveModules");
+        long start = System.nanoTime();
         try {
-            JSONArray jsonArray = new JSONArray();
-            
-            for (Module module : modules) {
-                JSONObject jsonModule = moduleToJson(module);
-                jsonArray.put(jsonModule);
-            }
-            
-            prefs.edit()
-                 .putString(MODULES_KEY, jsonArray.toString())
-                 .apply();
-                 
-        } catch (JSONException e) {
-            e.printStackTrace();
+            store().replaceAll(modules);
+        } finally {
+            SAVE_TIME.recordSince(start);
+            SAVE_SIZE.record(modules.size());
+            Trace.endSection();
         }
     }
     
@@ -58,71 +75,243 @@ public class ModuleStorage {
      * @return List of stored modules, empty list if none found
      */
     public List<Module> loadModules() {
-        List<Module> modules = new ArrayList<>();
-        
+        Trace.beginSection("ModuleStorage.loadModules");
+        long start = System.nanoTime();
         try {
-            String jsonString = prefs.getString(MODULES_KEY, "[]");
-            JSONArray jsonArray = new JSONArray(jsonString);
-            
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject jsonModule = jsonArray.getJSONObject(i);
-                Module module = jsonToModule(jsonModule);
-                modules.add(module);
-            }
-            
-        } catch (JSONException e) {
-            e.printStackTrace();
+            List<Module> modules = store().getAll();
+            LOAD_SIZE.record(modules.size());
+            return modules;
+        } finally {
+            LOAD_TIME.recordSince(start);
+            Trace.endSection();
         }
-        
-        return modules;
     }
     
     /**
-     * generates next unique id for new modules.
-     * 
-     * @return Next available id
+     * returns the current state of all modules for long reads, see {@link ModuleStore#getSnapshot()}.
+     *
+     * @return current state
      */
-    public long getNextId() {
-        long nextId = prefs.getLong(NEXT_ID_KEY, 1);
-        prefs.edit().putLong(NEXT_ID_KEY, nextId + 1).apply();
-        return nextId;
+    public ModuleView getSnapshot() {
+        return store().getSnapshot();
     }
-    
+
+    /**
+     * loads only the ids and content hashes of all modules, in display order.
+     *
+     * @return id list
+     */
+    public ModuleIdList loadIdList() {
+        return store().getIdList();
+    }
+
     /**
-     * Converts Module object to json representation.
+     * loads the ids of the modules matching a search text and grade range, in the requested order.
+     *
+     * @param query search, sort order and grade range
+     * @return id list of the matching modules
      */
-    private JSONObject moduleToJson(Module module) throws JSONException {
-        JSONObject json = new JSONObject();
-        json.put("id", module.getId());
-        json.put("modulnummer", module.getModulnummer());
-        json.put("modultitel", module.getModultitel());
-        
-        if (module.getNote1() != null) {
-            json.put("note1", module.getNote1());
+    public ModuleIdList loadIdList(ModuleListQuery query) {
+        Trace.beginSection("ModuleStorage.loadIdList");
+        long start = System.nanoTime();
+        try {
+            ModuleIdList idList = store().query(query);
+            QUERY_SIZE.record(idList.size());
+            return idList;
+        } finally {
+            QUERY_TIME.recordSince(start);
+            Trace.endSection();
         }
-        if (module.getNote2() != null) {
-            json.put("note2", module.getNote2());
+    }
+
+    /**
+     * loads the modules for a range of ids, e.g. one page of the list.
+     *
+     * @param ids array of ids
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     * @return modules in the order of {@code ids}, null for ids that no longer exist
+     */
+    public List<Module> loadModules(long[] ids, int from, int to) {
+        Trace.beginSection("ModuleStorage.loadPage");
+        long start = System.nanoTime();
+        try {
+            return store().findByIds(ids, from, to);
+        } finally {
+            PAGE_TIME.recordSince(start);
+            PAGE_SIZE.record(to - from);
+            Trace.endSection();
         }
-        
-        return json;
     }
-    
+
+    /**
+     * calculates the overall average without copying the modules.
+     *
+     * @return overall average, or null if no module has complete grades
+     */
+    public Double getOverallAverage() {
+        return store().getOverallAverage();
+    }
+
+    /**
+     * returns the grade distribution statistics, they are shared and must not be changed.
+     *
+     * @return statistics over all modules with complete grades
+     */
+    public ModuleStatistics getStatistics() {
+        return store().getStatistics();
+    }
+
+    /**
+     * looks up a single module without loading the whole list.
+     *
+     * @param id id of the module
+     * @return the module, or null if it does not exist
+     */
+    public Module findById(long id) {
+        return store().findById(id);
+    }
+
+    /**
+     * saves a single module, adding it if its id is not stored yet.
+     *
+     * @param module module to save, must have an id
+     */
+    public void upsert(Module module) {
+        store().upsert(module);
+    }
+
     /**
-     * Converts jsonobject back to Module instance.
+     * deletes a single module.
+     *
+     * @param id id of the module to delete
+     * @return true if the module existed
      */
-    private Module jsonToModule(JSONObject json) throws JSONException {
-        Module module = new Module();
-        module.setId(json.getLong("id"));
-        module.setModulnummer(json.getString("modulnummer"));
-        module.setModultitel(json.getString("modultitel"));
-        
-        if (json.has("note1")) {
-            module.setNote1(json.getDouble("note1"));
+    public boolean delete(long id) {
+        return store().delete(id);
+    }
+
+    /**
+     * saves a batch of modules as one transaction.
+     *
+     * @param modules modules to save, all must have an id
+     * @return true if the batch was written
+     */
+    public boolean upsertAll(List<Module> modules) {
+        Trace.beginSection("ModuleStorage.upsertAll");
+        long start = System.nanoTime();
+        try {
+            return store().upsertAll(modules);
+        } finally {
+            BATCH_TIME.recordSince(start);
+            BATCH_SIZE.record(modules.size());
+            Trace.endSection();
         }
-        if (json.has("note2")) {
-            module.setNote2(json.getDouble("note2"));
+    }
+
+    /**
+     * imports modules from a csv or json stream in batches, see {@link ModuleImporter}.
+     *
+     * @param in stream to import, is not closed
+     * @param listener notified after every committed batch, may be null
+     * @return report with the number of imported modules and the rejected rows
+     */
+    public ModuleImporter.Report importModules(Reader in, ModuleImporter.ProgressListener listener) {
+        ModuleImporter importer = new ModuleImporter(new ModuleImporter.Target() {
+            @Override
+            public long allocateIds(int count) {
+                return ModuleStorage.this.allocateIds(count);
+            }
+
+            @Override
+            public boolean saveBatch(List<Module> batch) {
+                return upsertAll(batch);
+            }
+        }, listener);
+        return importer.importFrom(in);
+    }
+
+    /**
+     * saves the first rows and the overall average of the current state for the next cold start,
+     * see {@link ModulePreview}.
+     */
+    public void savePreview() {
+        Trace.beginSection("ModuleStorage.savePreview");
+        try {
+            ModulePreview.create(store().getSnapshot()).write(previewFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            Trace.endSection();
         }
-        
-        return module;
     }
-} 
\ No newline at end of file
+
+    /**
+     * writes all changes that are still held back by the write-behind delay.
+     */
+    public void flush() {
+        repository.flush();
+    }
+
+    /**
+     * @return the partitions with their summaries, see {@link ModulePartitions}
+     */
+    public ModulePartitions getPartitions() {
+        return repository.getPartitions();
+    }
+
+    /**
+     * creates an empty partition, it is not activated.
+     *
+     * @param name name of the partition
+     * @return the new partition
+     */
+    public ModulePartitions.Partition addPartition(String name) {
+        return repository.getPartitions().add(name);
+    }
+
+    /**
+     * opens another partition, from then on all calls read and write its modules.
+     *
+     * @param partitionId id of the partition
+     * @return false if there is no such partition
+     */
+    public boolean activatePartition(long partitionId) {
+        return repository.activatePartition(partitionId);
+    }
+
+    /**
+     * registers a listener for changes of any module, see {@link ModuleRepository#addChangeListener}.
+     *
+     * @param listener listener to add
+     */
+    public void addChangeListener(ModuleStore.ChangeListener listener) {
+        repository.addChangeListener(listener);
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removeChangeListener(ModuleStore.ChangeListener listener) {
+        repository.removeChangeListener(listener);
+    }
+
+    /**
+     * generates next unique id for new modules, safe to call from any thread.
+     * 
+     * @return Next available id
+     */
+    public long getNextId() {
+        return idAllocator.nextId();
+    }
+    
+    /**
+     * reserves a block of consecutive ids, safe to call from any thread.
+     *
+     * @param count number of ids to reserve
+     * @return first reserved id, the block ends at {@code first + count - 1}
+     */
+    public long allocateIds(int count) {
+        return idAllocator.allocate(count);
+    }
+} 
@@ -0,0 +1,94 @@
+package ch.wiss.m335_lb;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * storage engine holding all modules, e.g. the {@link ModuleLog} or the {@link SqliteModuleStore}.
+ * implementations are safe to use from any thread.
+ */
+public interface ModuleStore extends ModuleView {
+
+    /**
+     * interface for getting notified about changed modules
+     */
+    interface ChangeListener {
+        /**
+         * @param ids ids of the added, changed or deleted modules, null if all modules may have changed
+         */
+        void onModulesChanged(long[] ids);
+    }
+
+    /**
+     * returns the ids of the modules matching the query in the requested order.
+     *
+     * @param query search text, sort order and grade range
+     * @return ids and content hashes of the matching modules
+     */
+    ModuleIdList query(ModuleListQuery query);
+
+    /**
+     * returns a state for long reads such as exports. a store that can freeze its state returns one that
+     * later changes do not affect, others return themselves.
+     *
+     * @return current state
+     */
+    ModuleView getSnapshot();
+
+    /**
+     * inserts a new module or replaces the stored module with the same id.
+     *
+     * @param module module to store, must have an id
+     */
+    void upsert(Module module);
+
+    /**
+     * stores a batch of modules as one transaction.
+     *
+     * @param batch modules to store, all must have an id
+     * @return true if the batch was written, false if writing failed and nothing was applied
+     */
+    boolean upsertAll(List<Module> batch);
+
+    /**
+     * removes the module with the given id.
+     *
+     * @param id id of the module to remove
+     * @return true if a module was removed
+     */
+    boolean delete(long id);
+
+    /**
+     * makes the stored data equal to the given list, writing only what differs.
+     *
+     * @param newModules complete list of modules that should be stored, in insertion order
+     * @return false if writing failed, the store then keeps its previous state. changes a store holds back
+     *         to write them later count as written
+     */
+    boolean replaceAll(List<Module> newModules);
+
+    /**
+     * replaces the whole store, used for migrations. the data is on disk when this returns true.
+     *
+     * @param newModules complete list of modules that should be stored, in insertion order
+     * @return false if writing failed, the store then keeps its previous state
+     */
+    boolean resetTo(Collection<Module> newModules);
+
+    /**
+     * writes all changes that are still held back, e.g. before the app is stopped.
+     */
+    void flush();
+
+    /**
+     * writes all changes and releases the files, the store must not be used afterwards.
+     */
+    void close();
+
+    /**
+     * sets the listener told about every change. it may be called while the store is locked and must not block.
+     *
+     * @param listener listener, or null to remove it
+     */
+    void setChangeListener(ChangeListener listener);
+}
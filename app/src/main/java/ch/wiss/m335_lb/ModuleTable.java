@@ -0,0 +1,578 @@
+package ch.wiss.m335_lb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * columnar in-memory table of modules.
+ * every field is stored in its own array: ids in a {@code long[]}, grades in {@code double[]} with NaN
+ * for a missing grade, and pooled strings, so a row costs no objects of its own. rows keep their
+ * insertion order, replacing a row keeps its position. ids are indexed by an open addressing
+ * {@code long -> int} hash table without boxing. not thread safe.
+ *
+ * <p>columns and index are split into chunks of {@value #CHUNK_SIZE} entries. {@link #snapshot()}
+ * freezes the current state by sharing all chunks, the table copies a shared chunk before its first
+ * change afterwards. a snapshot therefore costs one reference per chunk and stays valid while the
+ * table is changed, it may be read on any thread.</p>
+ */
+public class ModuleTable {
+
+    static final int CHUNK_SIZE = 1024;
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // deleted rows are only compacted away once there are more of them than live ones (and at least this many)
+    private static final int MIN_DELETED_BEFORE_COMPACTION = 16;
+
+    // row >>> CHUNK_SHIFT selects the chunk, row & CHUNK_MASK the entry. only the last chunk may be shorter
+    private long[][] ids;
+    private String[][] modulnummern;
+    private String[][] modultitel;
+    private double[][] notes1;
+    private double[][] notes2;
+    private boolean[][] deleted;
+    private int capacity;
+    private int rowCount;
+    private int deletedCount;
+
+    // id -> row + 1, 0 marks a free slot
+    private long[][] indexKeys;
+    private int[][] indexRows;
+    private int indexCapacity;
+
+    // incremented by every snapshot, a chunk tagged with an older epoch may be referenced by a snapshot
+    // and is copied before it is changed
+    private int epoch;
+    private int[] rowChunkEpochs;
+    private int[] indexChunkEpochs;
+    // rows at or above this index are not visible in any snapshot, appending there needs no copy
+    private int sharedRowCount;
+    private final boolean frozen;
+
+    // one instance per distinct string, module numbers and titles repeat a lot in large catalogs
+    private final Map<String, String> stringPool = new HashMap<>();
+
+    /**
+     * creates an empty table
+     */
+    public ModuleTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * creates an empty table with room for the given number of rows.
+     *
+     * @param capacity expected number of rows
+     */
+    public ModuleTable(int capacity) {
+        frozen = false;
+        allocateRows(Math.max(INITIAL_CAPACITY, capacity));
+        allocateIndex(indexCapacityFor(this.capacity));
+    }
+
+    private ModuleTable(ModuleTable other) {
+        frozen = true;
+        ids = other.ids.clone();
+        modulnummern = other.modulnummern.clone();
+        modultitel = other.modultitel.clone();
+        notes1 = other.notes1.clone();
+        notes2 = other.notes2.clone();
+        deleted = other.deleted.clone();
+        capacity = other.capacity;
+        rowCount = other.rowCount;
+        deletedCount = other.deletedCount;
+        indexKeys = other.indexKeys.clone();
+        indexRows = other.indexRows.clone();
+        indexCapacity = other.indexCapacity;
+    }
+
+    /**
+     * returns a read-only copy of the current state, e.g. to hand it to another thread.
+     * no column is copied, the chunks are shared until this table changes them.
+     *
+     * @return frozen table, any change to it throws an {@link IllegalStateException}
+     */
+    public ModuleTable snapshot() {
+        if (frozen) {
+            return this;
+        }
+        epoch++;
+        sharedRowCount = Math.max(sharedRowCount, rowCount);
+        return new ModuleTable(this);
+    }
+
+    private void allocateRows(int rows) {
+        int chunks = chunkCount(rows);
+        // a small table gets a single short chunk, which grows up to the chunk size
+        int length = chunks == 1 ? rows : CHUNK_SIZE;
+        ids = new long[chunks][];
+        modulnummern = new String[chunks][];
+        modultitel = new String[chunks][];
+        notes1 = new double[chunks][];
+        notes2 = new double[chunks][];
+        deleted = new boolean[chunks][];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            allocateRowChunk(chunk, length);
+        }
+        capacity = chunks * length;
+        rowChunkEpochs = new int[chunks];
+        Arrays.fill(rowChunkEpochs, epoch);
+    }
+
+    private void allocateRowChunk(int chunk, int length) {
+        ids[chunk] = new long[length];
+        modulnummern[chunk] = new String[length];
+        modultitel[chunk] = new String[length];
+        notes1[chunk] = new double[length];
+        notes2[chunk] = new double[length];
+        deleted[chunk] = new boolean[length];
+    }
+
+    private void allocateIndex(int slots) {
+        int chunks = chunkCount(slots);
+        int length = Math.min(slots, CHUNK_SIZE);
+        indexKeys = new long[chunks][length];
+        indexRows = new int[chunks][length];
+        indexCapacity = slots;
+        indexChunkEpochs = new int[chunks];
+        Arrays.fill(indexChunkEpochs, epoch);
+    }
+
+    /**
+     * @return number of live rows
+     */
+    public int size() {
+        return rowCount - deletedCount;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * number of row slots including deleted ones, rows are iterated with
+     * {@code for (row = 0; row < getRowCount(); row++) if (isLive(row)) ...}.
+     *
+     * @return upper bound for row indexes
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param row row index
+     * @return false if the row has been deleted
+     */
+    public boolean isLive(int row) {
+        return !deleted[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * @param id module id
+     * @return row index of the module, -1 if there is none
+     */
+    public int indexOf(long id) {
+        int slot = slotOf(id);
+        return indexRows[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] - 1;
+    }
+
+    /**
+     * inserts a module or overwrites the row with the same id.
+     *
+     * @param module module to store, must have an id
+     * @return row index of the module
+     */
+    public int put(Module module) {
+        return put(module.getId(), module.getModulnummer(), module.getModultitel(),
+                toPrimitive(module.getNote1()), toPrimitive(module.getNote2()));
+    }
+
+    /**
+     * inserts a module or overwrites the row with the same id.
+     *
+     * @param note1 first grade, NaN if missing
+     * @param note2 second grade, NaN if missing
+     * @return row index of the module
+     */
+    public int put(long id, String modulnummer, String modultitel, double note1, double note2) {
+        checkWritable();
+        int slot = slotOf(id);
+        int row = indexRows[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] - 1;
+        if (row < 0) {
+            if (rowCount == capacity) {
+                growRows();
+            }
+            if (rowCount >= indexCapacity / 2) {
+                rebuildIndex(indexCapacity * 2);
+                slot = slotOf(id);
+            }
+            row = rowCount++;
+            int chunk = writableRowChunk(row);
+            ids[chunk][row & CHUNK_MASK] = id;
+            deleted[chunk][row & CHUNK_MASK] = false;
+            setSlot(slot, id, row + 1);
+        }
+        int chunk = writableRowChunk(row);
+        int offset = row & CHUNK_MASK;
+        modulnummern[chunk][offset] = pool(modulnummer);
+        this.modultitel[chunk][offset] = pool(modultitel);
+        notes1[chunk][offset] = note1;
+        notes2[chunk][offset] = note2;
+        return row;
+    }
+
+    /**
+     * deletes the row with the given id.
+     *
+     * @param id module id
+     * @return true if a row was deleted
+     */
+    public boolean remove(long id) {
+        checkWritable();
+        int slot = slotOf(id);
+        int row = indexRows[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] - 1;
+        if (row < 0) {
+            return false;
+        }
+
+        removeSlot(slot);
+        int chunk = writableRowChunk(row);
+        int offset = row & CHUNK_MASK;
+        deleted[chunk][offset] = true;
+        modulnummern[chunk][offset] = null;
+        modultitel[chunk][offset] = null;
+        deletedCount++;
+        if (deletedCount >= MIN_DELETED_BEFORE_COMPACTION && deletedCount > size()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * removes all rows.
+     */
+    public void clear() {
+        checkWritable();
+        // fresh chunks, a snapshot may still reference the old ones
+        allocateRows(INITIAL_CAPACITY);
+        allocateIndex(indexCapacityFor(capacity));
+        rowCount = 0;
+        deletedCount = 0;
+        sharedRowCount = 0;
+        stringPool.clear();
+    }
+
+    public long getId(int row) {
+        return ids[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    public String getModulnummer(int row) {
+        return modulnummern[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    public String getModultitel(int row) {
+        return modultitel[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * @return first grade, NaN if missing
+     */
+    public double getNote1(int row) {
+        return notes1[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * @return second grade, NaN if missing
+     */
+    public double getNote2(int row) {
+        return notes2[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * same as {@link Module#getContentHash()} of the module in this row, without creating it.
+     *
+     * @param row row index
+     * @return content hash of the row
+     */
+    public long getContentHash(int row) {
+        return Module.contentHash(getId(row), getModulnummer(row), getModultitel(row), getNote1(row), getNote2(row));
+    }
+
+    /**
+     * checks whether the row holds exactly the values of the given module.
+     *
+     * @param row row index
+     * @param module module to compare with
+     * @return true if all fields are equal
+     */
+    public boolean matches(int row, Module module) {
+        return module.getId() != null && getId(row) == module.getId()
+                && equalStrings(getModulnummer(row), module.getModulnummer())
+                && equalStrings(getModultitel(row), module.getModultitel())
+                && equalNotes(getNote1(row), module.getNote1())
+                && equalNotes(getNote2(row), module.getNote2());
+    }
+
+    /**
+     * creates a new {@link Module} object for the row, e.g. to hand it out of the storage.
+     *
+     * @param row row index
+     * @return module with the values of the row
+     */
+    public Module toModule(int row) {
+        return new Module(getId(row), getModulnummer(row), getModultitel(row),
+                toBoxed(getNote1(row)), toBoxed(getNote2(row)));
+    }
+
+    /**
+     * @return a new reusable row view
+     */
+    public Row newRow() {
+        return new Row();
+    }
+
+    /**
+     * lightweight view of one row, moved over the table instead of creating an object per module.
+     * only valid until the table is changed.
+     */
+    public class Row implements ModuleRow {
+
+        private int row;
+
+        /**
+         * points the view to another row.
+         *
+         * @param row row index
+         * @return this view
+         */
+        public Row moveTo(int row) {
+            this.row = row;
+            return this;
+        }
+
+        public long getId() {
+            return ModuleTable.this.getId(row);
+        }
+
+        @Override
+        public String getModulnummer() {
+            return ModuleTable.this.getModulnummer(row);
+        }
+
+        @Override
+        public String getModultitel() {
+            return ModuleTable.this.getModultitel(row);
+        }
+
+        @Override
+        public boolean hasCompleteGrades() {
+            return !Double.isNaN(getNote1(row)) && !Double.isNaN(getNote2(row));
+        }
+
+        @Override
+        public boolean hasAnyGrade() {
+            return !Double.isNaN(getNote1(row)) || !Double.isNaN(getNote2(row));
+        }
+
+        @Override
+        public double getAverageGrade() {
+            // NaN propagates if a grade is missing
+            return (getNote1(row) + getNote2(row)) / 2.0;
+        }
+    }
+
+    /**
+     * @return grade as stored in the table, NaN for null
+     */
+    public static double toPrimitive(Double note) {
+        return note != null ? note : Double.NaN;
+    }
+
+    private static Double toBoxed(double note) {
+        return Double.isNaN(note) ? null : note;
+    }
+
+    private static boolean equalStrings(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean equalNotes(double stored, Double note) {
+        return note == null ? Double.isNaN(stored) : Double.compare(stored, note) == 0;
+    }
+
+    private String pool(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = stringPool.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new IllegalStateException("snapshot tables are read-only");
+        }
+    }
+
+    /**
+     * copies the chunk of the row if a snapshot still references it and may read the row.
+     *
+     * @return chunk of the row, owned by this table
+     */
+    private int writableRowChunk(int row) {
+        int chunk = row >>> CHUNK_SHIFT;
+        if (rowChunkEpochs[chunk] != epoch && row < sharedRowCount) {
+            ids[chunk] = ids[chunk].clone();
+            modulnummern[chunk] = modulnummern[chunk].clone();
+            modultitel[chunk] = modultitel[chunk].clone();
+            notes1[chunk] = notes1[chunk].clone();
+            notes2[chunk] = notes2[chunk].clone();
+            deleted[chunk] = deleted[chunk].clone();
+            rowChunkEpochs[chunk] = epoch;
+        }
+        return chunk;
+    }
+
+    private void setSlot(int slot, long id, int rowPlusOne) {
+        int chunk = slot >>> CHUNK_SHIFT;
+        if (indexChunkEpochs[chunk] != epoch) {
+            indexKeys[chunk] = indexKeys[chunk].clone();
+            indexRows[chunk] = indexRows[chunk].clone();
+            indexChunkEpochs[chunk] = epoch;
+        }
+        indexKeys[chunk][slot & CHUNK_MASK] = id;
+        indexRows[chunk][slot & CHUNK_MASK] = rowPlusOne;
+    }
+
+    /**
+     * doubles a short single chunk, or appends a new chunk once the chunks are full size.
+     * existing full chunks are never copied.
+     */
+    private void growRows() {
+        int chunks = ids.length;
+        if (chunks == 1 && capacity < CHUNK_SIZE) {
+            capacity = Math.min(capacity * 2, CHUNK_SIZE);
+            ids[0] = Arrays.copyOf(ids[0], capacity);
+            modulnummern[0] = Arrays.copyOf(modulnummern[0], capacity);
+            modultitel[0] = Arrays.copyOf(modultitel[0], capacity);
+            notes1[0] = Arrays.copyOf(notes1[0], capacity);
+            notes2[0] = Arrays.copyOf(notes2[0], capacity);
+            deleted[0] = Arrays.copyOf(deleted[0], capacity);
+            rowChunkEpochs[0] = epoch;
+            return;
+        }
+        ids = Arrays.copyOf(ids, chunks + 1);
+        modulnummern = Arrays.copyOf(modulnummern, chunks + 1);
+        modultitel = Arrays.copyOf(modultitel, chunks + 1);
+        notes1 = Arrays.copyOf(notes1, chunks + 1);
+        notes2 = Arrays.copyOf(notes2, chunks + 1);
+        deleted = Arrays.copyOf(deleted, chunks + 1);
+        rowChunkEpochs = Arrays.copyOf(rowChunkEpochs, chunks + 1);
+        rowChunkEpochs[chunks] = epoch;
+        allocateRowChunk(chunks, CHUNK_SIZE);
+        capacity += CHUNK_SIZE;
+    }
+
+    /**
+     * moves the live rows together, keeping their order, and drops strings no row uses anymore.
+     */
+    private void compact() {
+        stringPool.clear();
+        int kept = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            if (kept != row) {
+                int from = row >>> CHUNK_SHIFT;
+                int offset = row & CHUNK_MASK;
+                int to = writableRowChunk(kept);
+                int keptOffset = kept & CHUNK_MASK;
+                ids[to][keptOffset] = ids[from][offset];
+                modulnummern[to][keptOffset] = modulnummern[from][offset];
+                modultitel[to][keptOffset] = modultitel[from][offset];
+                notes1[to][keptOffset] = notes1[from][offset];
+                notes2[to][keptOffset] = notes2[from][offset];
+                deleted[to][keptOffset] = false;
+            }
+            pool(getModulnummer(kept));
+            pool(getModultitel(kept));
+            kept++;
+        }
+        for (int row = kept; row < rowCount; row++) {
+            int chunk = writableRowChunk(row);
+            modulnummern[chunk][row & CHUNK_MASK] = null;
+            modultitel[chunk][row & CHUNK_MASK] = null;
+        }
+        rowCount = kept;
+        deletedCount = 0;
+        rebuildIndex(indexCapacity);
+    }
+
+    /**
+     * fills a fresh index, a snapshot keeps the old one.
+     */
+    private void rebuildIndex(int slots) {
+        allocateIndex(slots);
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                long id = getId(row);
+                setSlot(slotOf(id), id, row + 1);
+            }
+        }
+    }
+
+    /**
+     * @return slot holding the id, or the free slot where it would be inserted
+     */
+    private int slotOf(long id) {
+        int mask = indexCapacity - 1;
+        int slot = mix(id) & mask;
+        while (true) {
+            int chunk = slot >>> CHUNK_SHIFT;
+            int offset = slot & CHUNK_MASK;
+            if (indexRows[chunk][offset] == 0 || indexKeys[chunk][offset] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * frees a slot with backward shift deletion, so lookups never need tombstones in the index.
+     */
+    private void removeSlot(int slot) {
+        int mask = indexCapacity - 1;
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (indexRows[next >>> CHUNK_SHIFT][next & CHUNK_MASK] != 0) {
+            long key = indexKeys[next >>> CHUNK_SHIFT][next & CHUNK_MASK];
+            int home = mix(key) & mask;
+            // move the entry back if the free slot lies on its probe path from home to next
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                setSlot(free, key, indexRows[next >>> CHUNK_SHIFT][next & CHUNK_MASK]);
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        setSlot(free, 0, 0);
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int chunkCount(int entries) {
+        return (entries + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+    }
+
+    /**
+     * @return power of two with a load factor of at most 0.5 for the given number of rows
+     */
+    private static int indexCapacityFor(int rows) {
+        return Integer.highestOneBit(Math.max(2, rows) - 1) << 2;
+    }
+}
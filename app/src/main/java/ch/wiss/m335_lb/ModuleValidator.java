@@ -0,0 +1,100 @@
+package ch.wiss.m335_lb;
+
+/**
+ * validation rules for module input, shared by the edit form and the import.
+ * every check returns the error message to show, or null if the value is valid.
+ */
+public class ModuleValidator {
+
+    public static final int MIN_TEXT_LENGTH = 4;
+    public static final double MIN_NOTE = 1.0;
+    public static final double MAX_NOTE = 6.0;
+
+    private ModuleValidator() {
+    }
+
+    /**
+     * @param modulnummer module number as entered
+     * @return error message, or null if valid
+     */
+    public static String checkModulnummer(String modulnummer) {
+        if (modulnummer == null || modulnummer.trim().length() < MIN_TEXT_LENGTH) {
+            return "Modulnummer muss mindestens 4 Zeichen haben";
+        }
+        return null;
+    }
+
+    /**
+     * @param modultitel module title as entered
+     * @return error message, or null if valid
+     */
+    public static String checkModultitel(String modultitel) {
+        if (modultitel == null || modultitel.trim().length() < MIN_TEXT_LENGTH) {
+            return "Modultitel muss mindestens 4 Zeichen haben";
+        }
+        return null;
+    }
+
+    /**
+     * checks an optional grade as entered, an empty text is valid.
+     *
+     * @param noteText grade as text
+     * @return error message, or null if valid
+     */
+    public static String checkNote(String noteText) {
+        if (noteText == null || noteText.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return checkNote(Double.parseDouble(noteText.trim()));
+        } catch (NumberFormatException e) {
+            return "Ungültige Zahl";
+        }
+    }
+
+    /**
+     * checks an optional grade, null is valid.
+     *
+     * @param note grade
+     * @return error message, or null if valid
+     */
+    public static String checkNote(Double note) {
+        if (note != null && !(note >= MIN_NOTE && note <= MAX_NOTE)) {
+            return "Note muss zwischen 1.0 und 6.0 liegen";
+        }
+        return null;
+    }
+
+    /**
+     * parses a grade that has been checked with {@link #checkNote(String)} before.
+     *
+     * @param noteText grade as text
+     * @return the grade, or null if the text is empty
+     */
+    public static Double parseNote(String noteText) {
+        if (noteText == null || noteText.trim().isEmpty()) {
+            return null;
+        }
+        return Double.parseDouble(noteText.trim());
+    }
+
+    /**
+     * checks all fields of a module.
+     *
+     * @param module module to check
+     * @return the first error message, or null if the module is valid
+     */
+    public static String check(Module module) {
+        String error = checkModulnummer(module.getModulnummer());
+        if (error == null) {
+            error = checkModultitel(module.getModultitel());
+        }
+        if (error == null) {
+            error = checkNote(module.getNote1());
+        }
+        if (error == null) {
+            error = checkNote(module.getNote2());
+        }
+        return error;
+    }
+}
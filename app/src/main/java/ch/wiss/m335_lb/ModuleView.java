@@ -0,0 +1,72 @@
+package ch.wiss.m335_lb;
+
+import java.util.List;
+
+/**
+ * read access to a set of modules, implemented by the stores and by their frozen states.
+ * all returned modules are copies, the caller may change them.
+ */
+public interface ModuleView {
+
+    /**
+     * @return true if there are no modules
+     */
+    boolean isEmpty();
+
+    /**
+     * @return number of modules
+     */
+    int size();
+
+    /**
+     * returns copies of all modules in insertion order.
+     *
+     * @return List of modules
+     */
+    List<Module> getAll();
+
+    /**
+     * @return largest id of the modules, or 0 if there are none
+     */
+    long getMaxId();
+
+    /**
+     * returns the ids and content hashes of all modules in insertion order, without copying any module.
+     *
+     * @return id list
+     */
+    ModuleIdList getIdList();
+
+    /**
+     * looks up a single module by its id.
+     *
+     * @param id id of the module
+     * @return copy of the module, or null if no module has this id
+     */
+    Module findById(long id);
+
+    /**
+     * returns copies of the modules with the given ids.
+     *
+     * @param ids array of ids
+     * @param from first index in {@code ids}, inclusive
+     * @param to last index in {@code ids}, exclusive
+     * @return modules in the order of {@code ids}, null for ids that do not exist
+     */
+    List<Module> findByIds(long[] ids, int from, int to);
+
+    /**
+     * @return average of all modules that have both grades, or null if there is none
+     */
+    Double getOverallAverage();
+
+    /**
+     * @return number of modules that have both grades, the overall average is taken over them
+     */
+    int getGradedCount();
+
+    /**
+     * @return grade statistics, which the caller may query on any thread but must not change
+     */
+    ModuleStatistics getStatistics();
+}
@@ -0,0 +1,604 @@
+package ch.wiss.m335_lb;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * module store in a sqlite database, the alternative to the {@link ModuleLog}.
+ * the database runs in wal mode, so reads on other threads are not blocked by a write. writes reuse
+ * compiled statements and batches run in one transaction. search, sort orders, grade range and aggregates
+ * are evaluated by the database: the keys the {@link ModuleSortIndex} and {@link ModuleSearchIndex} use are
+ * stored as columns when a module is written, and the average is indexed as an expression.
+ */
+public class SqliteModuleStore implements ModuleStore {
+
+    private static final String DATABASE_NAME = "modules.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE = "modules";
+    // sql null if a grade is missing, the expression of the index has to be repeated exactly to be used
+    private static final String AVERAGE = "(note1 + note2) / 2.0";
+    // 0 with both grades, 1 with one, 2 without any, like ModuleSortIndex
+    private static final String COMPLETENESS = "((note1 IS NULL) + (note2 IS NULL))";
+    private static final String COLUMNS = "id, modulnummer, modultitel, note1, note2";
+    // sqlite allows at most 999 parameters per statement
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    private final SQLiteDatabase db;
+    // compiled once, only used while holding the lock of the store
+    private final SQLiteStatement insertStatement;
+    private final SQLiteStatement updateStatement;
+    private final SQLiteStatement deleteStatement;
+    private final SQLiteStatement reorderStatement;
+    private final Collator collator = Collator.getInstance(Locale.GERMAN);
+    // insertion position of the next new module
+    private long nextSeq;
+    private volatile ChangeListener changeListener;
+
+    /**
+     * opens the default database, it is created on first use.
+     *
+     * @param context any context of the app
+     */
+    public SqliteModuleStore(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * opens a database, it is created on first use.
+     *
+     * @param context any context of the app
+     * @param name file name of the database
+     */
+    public SqliteModuleStore(Context context, String name) {
+        OpenHelper helper = new OpenHelper(context, name);
+        helper.setWriteAheadLoggingEnabled(true);
+        db = helper.getWritableDatabase();
+        collator.setStrength(Collator.SECONDARY);
+
+        insertStatement = db.compileStatement("INSERT OR IGNORE INTO " + TABLE
+                + " (id, seq, modulnummer, modultitel, note1, note2, number_key, title_key, search_number, search_words)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        // changes nothing if the stored values are the same, so unchanged modules are not reported
+        updateStatement = db.compileStatement("UPDATE " + TABLE + " SET modulnummer = ?, modultitel = ?,"
+                + " note1 = ?, note2 = ?, number_key = ?, title_key = ?, search_number = ?, search_words = ?"
+                + " WHERE id = ? AND NOT (modulnummer IS ? AND modultitel IS ? AND note1 IS ? AND note2 IS ?)");
+        deleteStatement = db.compileStatement("DELETE FROM " + TABLE + " WHERE id = ?");
+        reorderStatement = db.compileStatement("UPDATE " + TABLE + " SET seq = ? WHERE id = ?");
+        nextSeq = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) + 1 FROM " + TABLE, null);
+    }
+
+    /**
+     * creates the schema
+     */
+    private static class OpenHelper extends SQLiteOpenHelper {
+
+        OpenHelper(Context context, String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            // the key columns are derived from modulnummer and modultitel whenever a module is written
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + "id INTEGER PRIMARY KEY, "
+                    + "seq INTEGER NOT NULL, "
+                    + "modulnummer TEXT, "
+                    + "modultitel TEXT, "
+                    + "note1 REAL, "
+                    + "note2 REAL, "
+                    + "number_key TEXT NOT NULL, "
+                    + "title_key BLOB NOT NULL, "
+                    + "search_number TEXT NOT NULL, "
+                    + "search_words TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX modules_seq ON " + TABLE + " (seq)");
+            db.execSQL("CREATE INDEX modules_number ON " + TABLE + " (number_key, id)");
+            db.execSQL("CREATE INDEX modules_search_number ON " + TABLE + " (search_number)");
+            db.execSQL("CREATE INDEX modules_title ON " + TABLE + " (title_key, id)");
+            db.execSQL("CREATE INDEX modules_average ON " + TABLE + " (" + AVERAGE + ", number_key, id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // there is only one version so far
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return DatabaseUtils.longForQuery(db, "SELECT NOT EXISTS (SELECT 1 FROM " + TABLE + ")", null) != 0;
+    }
+
+    @Override
+    public int size() {
+        return (int) DatabaseUtils.queryNumEntries(db, TABLE);
+    }
+
+    @Override
+    public List<Module> getAll() {
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMNS + " FROM " + TABLE + " ORDER BY seq", null)) {
+            List<Module> result = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                result.add(toModule(cursor));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public long getMaxId() {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(id), 0) FROM " + TABLE, null);
+    }
+
+    @Override
+    public ModuleIdList getIdList() {
+        return query(ModuleListQuery.ALL);
+    }
+
+    /**
+     * returns the ids of the modules matching the query in the requested order. every word of the search
+     * text has to be the start of the module number or of a title word, like in the {@link ModuleSearchIndex}.
+     *
+     * @param query search text, sort order and grade range
+     * @return ids and content hashes of the matching modules
+     */
+    @Override
+    public ModuleIdList query(ModuleListQuery query) {
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        for (String word : ModuleSearchIndex.tokenize(query.getSearchText())) {
+            // words only consist of letters and digits, nothing to escape for like
+            appendCondition(where, "(search_number >= ? AND search_number < ? OR search_words LIKE ?)");
+            args.add(word);
+            args.add(word + Character.MAX_VALUE);
+            args.add("% " + word + "%");
+        }
+        // bound as text, the cast keeps the comparison numeric
+        if (!Double.isNaN(query.getMinGrade())) {
+            appendCondition(where, AVERAGE + " >= CAST(? AS REAL)");
+            args.add(Double.toString(query.getMinGrade()));
+        }
+        if (!Double.isNaN(query.getMaxGrade())) {
+            appendCondition(where, AVERAGE + " <= CAST(? AS REAL)");
+            args.add(Double.toString(query.getMaxGrade()));
+        }
+
+        boolean descending = query.isDescending();
+        IdListBuilder result = new IdListBuilder();
+        switch (query.getSortOrder()) {
+            case NUMBER:
+                select(result, where, args, orderBy(descending, "number_key", "id"));
+                break;
+            case TITLE:
+                select(result, where, args, orderBy(descending, "title_key", "id"));
+                break;
+            case AVERAGE:
+                // modules without an average stay at the end in both directions
+                StringBuilder ranked = new StringBuilder(where);
+                appendCondition(ranked, AVERAGE + " IS NOT NULL");
+                select(result, ranked, args, orderBy(descending, AVERAGE, "number_key", "id"));
+                if (!query.hasGradeFilter()) {
+                    StringBuilder unranked = new StringBuilder(where);
+                    appendCondition(unranked, AVERAGE + " IS NULL");
+                    select(result, unranked, args, orderBy(false, "number_key", "id"));
+                }
+                break;
+            case COMPLETENESS:
+                select(result, where, args, orderBy(descending, COMPLETENESS, "number_key", "id"));
+                break;
+            default:
+                select(result, where, args, orderBy(descending, "seq"));
+                break;
+        }
+        return result.build();
+    }
+
+    @Override
+    public ModuleView getSnapshot() {
+        // reads see every committed change, an export may include changes made while it runs
+        return this;
+    }
+
+    @Override
+    public List<Module> findByIds(long[] ids, int from, int to) {
+        Map<Long, Module> found = new HashMap<>();
+        for (int start = from; start < to; start += MAX_IN_PARAMETERS) {
+            int end = Math.min(to, start + MAX_IN_PARAMETERS);
+            String[] args = new String[end - start];
+            StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE id IN (");
+            for (int i = start; i < end; i++) {
+                sql.append(i > start ? ", ?" : "?");
+                args[i - start] = Long.toString(ids[i]);
+            }
+            sql.append(')');
+            try (Cursor cursor = db.rawQuery(sql.toString(), args)) {
+                while (cursor.moveToNext()) {
+                    Module module = toModule(cursor);
+                    found.put(module.getId(), module);
+                }
+            }
+        }
+
+        List<Module> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(found.get(ids[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public Module findById(long id) {
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMNS + " FROM " + TABLE + " WHERE id = ?",
+                new String[]{Long.toString(id)})) {
+            return cursor.moveToFirst() ? toModule(cursor) : null;
+        }
+    }
+
+    @Override
+    public Double getOverallAverage() {
+        try (Cursor cursor = db.rawQuery("SELECT AVG(" + AVERAGE + ") FROM " + TABLE, null)) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getDouble(0) : null;
+        }
+    }
+
+    @Override
+    public int getGradedCount() {
+        // count skips the rows where the average is sql null
+        return (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(" + AVERAGE + ") FROM " + TABLE, null);
+    }
+
+    @Override
+    public ModuleStatistics getStatistics() {
+        ModuleStatistics statistics = new ModuleStatistics();
+        // only the averages are read, along the average index, and sorted once at the end
+        statistics.beginBulkUpdate();
+        try (Cursor cursor = db.rawQuery("SELECT modulnummer, " + AVERAGE + " FROM " + TABLE
+                + " WHERE " + AVERAGE + " IS NOT NULL ORDER BY " + AVERAGE, null)) {
+            while (cursor.moveToNext()) {
+                statistics.add(cursor.getString(0), cursor.getDouble(1));
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public synchronized void upsert(Module module) {
+        requireId(module);
+        boolean changed;
+        try {
+            changed = write(module);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (changed) {
+            notifyChanged(new long[]{module.getId()});
+        }
+    }
+
+    @Override
+    public synchronized boolean upsertAll(List<Module> batch) {
+        for (Module module : batch) {
+            requireId(module);
+        }
+        long[] changedIds = new long[batch.size()];
+        int changedCount = 0;
+        long previousSeq = nextSeq;
+        db.beginTransaction();
+        try {
+            for (Module module : batch) {
+                if (write(module)) {
+                    changedIds[changedCount++] = module.getId();
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // the rows were rolled back, so were their insertion positions
+            nextSeq = previousSeq;
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+        if (changedCount > 0) {
+            notifyChanged(Arrays.copyOf(changedIds, changedCount));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        int deleted;
+        try {
+            deleteStatement.bindLong(1, id);
+            deleted = deleteStatement.executeUpdateDelete();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (deleted > 0) {
+            notifyChanged(new long[]{id});
+        }
+        return deleted > 0;
+    }
+
+    /**
+     * makes the stored data equal to the given list in one transaction. only changed modules are written,
+     * the insertion positions are only renumbered if the list reorders existing modules.
+     *
+     * @param newModules complete list of modules that should be stored
+     * @return false if the transaction failed and was rolled back
+     */
+    @Override
+    public synchronized boolean replaceAll(List<Module> newModules) {
+        Map<Long, Module> target = new LinkedHashMap<>();
+        for (Module module : newModules) {
+            requireId(module);
+            target.put(module.getId(), module);
+        }
+
+        long[] changedIds;
+        int changedCount = 0;
+        boolean reordered;
+        long previousSeq = nextSeq;
+        db.beginTransaction();
+        try {
+            long[] storedIds = getIdList().ids();
+            changedIds = new long[storedIds.length + target.size()];
+            for (long id : storedIds) {
+                if (!target.containsKey(id)) {
+                    deleteStatement.bindLong(1, id);
+                    deleteStatement.executeUpdateDelete();
+                    changedIds[changedCount++] = id;
+                }
+            }
+            for (Module module : target.values()) {
+                if (write(module)) {
+                    changedIds[changedCount++] = module.getId();
+                }
+            }
+            reordered = !keepsOrder(storedIds, target);
+            if (reordered) {
+                long seq = 1;
+                for (long id : target.keySet()) {
+                    reorderStatement.bindLong(1, seq++);
+                    reorderStatement.bindLong(2, id);
+                    reorderStatement.executeUpdateDelete();
+                }
+                nextSeq = seq;
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // the rows were rolled back, so were their insertion positions
+            nextSeq = previousSeq;
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+
+        if (reordered) {
+            notifyChanged(null);
+        } else if (changedCount > 0) {
+            notifyChanged(Arrays.copyOf(changedIds, changedCount));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean resetTo(Collection<Module> newModules) {
+        for (Module module : newModules) {
+            requireId(module);
+        }
+        long previousSeq = nextSeq;
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE);
+            nextSeq = 1;
+            for (Module module : newModules) {
+                write(module);
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // the rows were rolled back, so were their insertion positions
+            nextSeq = previousSeq;
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+        notifyChanged(null);
+        return true;
+    }
+
+    /**
+     * every change is committed right away, nothing is held back.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public synchronized void close() {
+        insertStatement.close();
+        updateStatement.close();
+        deleteStatement.close();
+        reorderStatement.close();
+        db.close();
+    }
+
+    @Override
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * updates or inserts a module, must be called while holding the lock.
+     *
+     * @return false if the module was already stored with the same values
+     */
+    private boolean write(Module module) {
+        String numberKey = ModuleSortIndex.numberKey(module.getModulnummer());
+        byte[] titleKey = collator.getCollationKey(
+                module.getModultitel() != null ? module.getModultitel() : "").toByteArray();
+        String searchNumber = ModuleSearchIndex.normalizeNumber(module.getModulnummer());
+        String searchWords = " " + String.join(" ", ModuleSearchIndex.tokenize(module.getModultitel())) + " ";
+
+        updateStatement.clearBindings();
+        bindText(updateStatement, 1, module.getModulnummer());
+        bindText(updateStatement, 2, module.getModultitel());
+        bindGrade(updateStatement, 3, module.getNote1());
+        bindGrade(updateStatement, 4, module.getNote2());
+        updateStatement.bindString(5, numberKey);
+        updateStatement.bindBlob(6, titleKey);
+        updateStatement.bindString(7, searchNumber);
+        updateStatement.bindString(8, searchWords);
+        updateStatement.bindLong(9, module.getId());
+        bindText(updateStatement, 10, module.getModulnummer());
+        bindText(updateStatement, 11, module.getModultitel());
+        bindGrade(updateStatement, 12, module.getNote1());
+        bindGrade(updateStatement, 13, module.getNote2());
+        if (updateStatement.executeUpdateDelete() > 0) {
+            return true;
+        }
+
+        // either a new module or an unchanged one, which the insert ignores
+        insertStatement.clearBindings();
+        insertStatement.bindLong(1, module.getId());
+        insertStatement.bindLong(2, nextSeq);
+        bindText(insertStatement, 3, module.getModulnummer());
+        bindText(insertStatement, 4, module.getModultitel());
+        bindGrade(insertStatement, 5, module.getNote1());
+        bindGrade(insertStatement, 6, module.getNote2());
+        insertStatement.bindString(7, numberKey);
+        insertStatement.bindBlob(8, titleKey);
+        insertStatement.bindString(9, searchNumber);
+        insertStatement.bindString(10, searchWords);
+        if (insertStatement.executeInsert() == -1) {
+            return false;
+        }
+        nextSeq++;
+        return true;
+    }
+
+    /**
+     * checks whether the modules that stay keep their relative order and new ones come after them.
+     */
+    private static boolean keepsOrder(long[] storedIds, Map<Long, Module> target) {
+        Iterator<Long> targetIds = target.keySet().iterator();
+        for (long id : storedIds) {
+            if (!target.containsKey(id)) {
+                continue;
+            }
+            if (!targetIds.hasNext() || targetIds.next() != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void select(IdListBuilder result, CharSequence where, List<String> args, String orderBy) {
+        String sql = "SELECT " + COLUMNS + " FROM " + TABLE + where + " ORDER BY " + orderBy;
+        try (Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]))) {
+            result.ensureCapacity(cursor.getCount());
+            while (cursor.moveToNext()) {
+                result.add(cursor.getLong(0), toModule(cursor).getContentHash());
+            }
+        }
+    }
+
+    private static void appendCondition(StringBuilder where, String condition) {
+        where.append(where.length() == 0 ? " WHERE " : " AND ").append(condition);
+    }
+
+    private static String orderBy(boolean descending, String... terms) {
+        StringBuilder orderBy = new StringBuilder();
+        for (String term : terms) {
+            if (orderBy.length() > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(term).append(descending ? " DESC" : " ASC");
+        }
+        return orderBy.toString();
+    }
+
+    private static Module toModule(Cursor cursor) {
+        return new Module(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                cursor.isNull(3) ? null : cursor.getDouble(3),
+                cursor.isNull(4) ? null : cursor.getDouble(4));
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindGrade(SQLiteStatement statement, int index, Double value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static void requireId(Module module) {
+        if (module.getId() == null) {
+            throw new IllegalArgumentException("module without id: " + module);
+        }
+    }
+
+    private void notifyChanged(long[] ids) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onModulesChanged(ids);
+        }
+    }
+
+    /**
+     * collects ids and content hashes into growing primitive arrays
+     */
+    private static class IdListBuilder {
+
+        private long[] ids = new long[16];
+        private long[] hashes = new long[16];
+        private int size;
+
+        void ensureCapacity(int additional) {
+            if (size + additional > ids.length) {
+                int capacity = Math.max(size + additional, ids.length * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+        }
+
+        void add(long id, long hash) {
+            ensureCapacity(1);
+            ids[size] = id;
+            hashes[size] = hash;
+            size++;
+        }
+
+        ModuleIdList build() {
+            return new ModuleIdList(Arrays.copyOf(ids, size), Arrays.copyOf(hashes, size));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the block id allocator.
+ */
+public class IdAllocatorTest {
+
+    @Test
+    public void allocate_persistsOncePerBlockAndNeverReusesAfterRestart() {
+        MemoryStore store = new MemoryStore();
+        IdAllocator allocator = new IdAllocator(store, 1, 100);
+
+        assertEquals(1, allocator.nextId());
+        assertEquals(2, allocator.allocate(50));
+        assertEquals(52, allocator.nextId());
+        assertEquals(1, store.writes);
+        assertEquals(102, store.highWater);
+
+        // a crash loses the unused rest of the block, the ids handed out are never repeated
+        IdAllocator restarted = new IdAllocator(store, 1, 100);
+        assertEquals(102, restarted.nextId());
+        // stored modules with larger ids than the mark, e.g. after the prefs were cleared
+        assertEquals(5000, new IdAllocator(store, 5000, 100).nextId());
+    }
+
+    @Test
+    public void allocate_handsOutUniqueIdsAcrossThreads() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        IdAllocator allocator = new IdAllocator(store, 1, 64);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int task = 0; task < 4; task++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    long first = allocator.allocate(1 + i % 3);
+                    for (int j = 0; j <= i % 3; j++) {
+                        assertTrue(ids.add(first + j));
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4 * (3334 + 3333 * 2 + 3333 * 3), ids.size());
+        assertTrue(store.highWater > allocator.nextId());
+    }
+
+    private static class MemoryStore implements IdAllocator.Store {
+
+        volatile long highWater = -1;
+        int writes;
+
+        @Override
+        public long readHighWater(long defaultValue) {
+            return highWater >= 0 ? highWater : defaultValue;
+        }
+
+        @Override
+        public synchronized boolean writeHighWater(long highWater) {
+            assertTrue(highWater > this.highWater);
+            this.highWater = highWater;
+            writes++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the metrics registry.
+ */
+public class MetricsTest {
+
+    @Test
+    public void histogram_percentilesStayWithinBucketError() {
+        Metrics.Histogram histogram = new Metrics().histogram("values");
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 1e-9);
+        assertEquals(50_000, histogram.getPercentile(50), 50_000 / 16.0);
+        assertEquals(99_000, histogram.getPercentile(99), 99_000 / 16.0);
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(100_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void histogram_countsSmallValuesExactlyAndExtremesSafely() {
+        Metrics.Histogram histogram = new Metrics().histogram("values");
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(25));
+        assertEquals(3, histogram.getPercentile(75));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void dump_writesEveryMetricAndResetClearsThem() {
+        Metrics metrics = new Metrics();
+        metrics.counter("adapter.placeholders").add(7);
+        metrics.timer("storage.loadModules").record(2_500_000);
+        metrics.histogram("storage.loadModules.size").record(42);
+
+        StringWriter out = new StringWriter();
+        metrics.dump("", new PrintWriter(out));
+        String[] lines = out.toString().split("\n");
+
+        assertEquals(4, lines.length);
+        assertEquals("  adapter.placeholders: 7", lines[1]);
+        assertTrue(lines[2].startsWith("  storage.loadModules (µs): count=1"));
+        assertTrue(lines[3].endsWith(" max=42"));
+
+        metrics.reset();
+        assertEquals(0, metrics.counter("adapter.placeholders").get());
+        assertEquals(0, metrics.timer("storage.loadModules").getCount());
+    }
+}
@@ -0,0 +1,51 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the display rows of the module list.
+ */
+public class ModuleDisplayRowTest {
+
+    @Test
+    public void constructor_formatsEveryTextOnce() {
+        Module module = new Module(1L, "m335", null, 4.5, 5.0);
+        int[] measured = new int[1];
+        ModuleDisplayRow row = new ModuleDisplayRow(module, new ModuleDisplayRow.TextMeasurer() {
+            @Override
+            public CharSequence measureNumber(String text) {
+                measured[0]++;
+                return text.toUpperCase();
+            }
+
+            @Override
+            public CharSequence measureTitle(String text) {
+                measured[0]++;
+                return text;
+            }
+
+            @Override
+            public CharSequence measureGradeInfo(String text) {
+                measured[0]++;
+                return text;
+            }
+        });
+
+        assertEquals(3, measured[0]);
+        assertEquals("M335", row.getNumberText());
+        assertEquals("", row.getTitleText());
+        assertEquals(String.format("Durchschnitt: %.1f", 4.75), row.getGradeInfoText());
+        assertEquals(module.getContentHash(), row.getContentHash());
+        assertSame(module, row.getModule());
+    }
+
+    @Test
+    public void getGradeInfo_describesMissingGrades() {
+        assertEquals("Noten: noch nicht komplett",
+                ModuleDisplayRow.getGradeInfo(new Module(1L, "m335", "Mobile-Applikationen", 4.0, null)));
+        assertEquals("Noch keine Noten eingetragen",
+                ModuleDisplayRow.getGradeInfo(new Module(1L, "m335", "Mobile-Applikationen", null, null)));
+    }
+}
@@ -0,0 +1,75 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the streaming export.
+ */
+public class ModuleExporterTest {
+
+    private static final List<Module> MODULES = List.of(
+            new Module(1L, "m335", "Mobile-Applikationen realisieren", 5.5, 5.0),
+            new Module(2L, "m346", "Cloud; \"Lösungen\"", 4.0, null),
+            new Module(3L, "m164", "Datenbanken erstellen", null, null));
+
+    @Test
+    public void exportTo_writesCsvThatCanBeImportedAgain() throws IOException {
+        StringWriter out = new StringWriter();
+        int exported = new ModuleExporter(ModuleExporterTest::load, ModuleExporter.Format.CSV, null)
+                .exportTo(new long[]{1, 2, 3, 4}, out);
+
+        assertEquals(3, exported);
+        String[] lines = out.toString().split("\r\n");
+        assertEquals("m335;Mobile-Applikationen realisieren;5,50;5,00;5,25", lines[1]);
+        assertEquals("m346;\"Cloud; \"\"Lösungen\"\"\";4,00;;", lines[2]);
+
+        List<Module> imported = new ArrayList<>();
+        new ModuleImporter(new ModuleImporter.Target() {
+            @Override
+            public long allocateIds(int count) {
+                return 1;
+            }
+
+            @Override
+            public boolean saveBatch(List<Module> batch) {
+                return imported.addAll(batch);
+            }
+        }, null).importFrom(new StringReader(out.toString()));
+        assertEquals(MODULES, imported);
+    }
+
+    @Test
+    public void exportTo_writesJsonArrayAndStopsWhenCancelled() throws IOException {
+        StringWriter out = new StringWriter();
+        List<Integer> progress = new ArrayList<>();
+        new ModuleExporter(ModuleExporterTest::load, ModuleExporter.Format.JSON, (exported, total) -> progress.add(total))
+                .exportTo(new long[]{1, 2}, out);
+
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(out.toString()));
+        assertEquals(MODULES.get(0), reader.next());
+        assertEquals(MODULES.get(1), reader.next());
+        assertNull(reader.next());
+        assertTrue(out.toString().contains("\"durchschnitt\":5.25"));
+        assertEquals(List.of(2), progress);
+
+        ModuleExporter cancelled = new ModuleExporter(ModuleExporterTest::load, ModuleExporter.Format.JSON, null);
+        cancelled.cancel();
+        assertEquals(-1, cancelled.exportTo(new long[]{1, 2}, new StringWriter()));
+    }
+
+    private static List<Module> load(long[] ids, int from, int to) {
+        List<Module> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add(ids[i] <= MODULES.size() ? new Module(MODULES.get((int) ids[i] - 1)) : null);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the bulk import.
+ */
+public class ModuleImporterTest {
+
+    @Test
+    public void importFrom_readsCsvWithHeaderAndReportsInvalidRows() {
+        RecordingTarget target = new RecordingTarget();
+        String csv = "﻿Modultitel;Modulnummer;Note 1;Note 2\r\n"
+                + "Mobile-Applikationen realisieren;m335;5,5;\r\n"
+                + "\"Cloud; Lösungen\";m346;4;4,5\r\n"
+                + "Zu kurz;m1;;\r\n"
+                + "Datenbanken;m164;sieben;\r\n";
+
+        ModuleImporter.Report report = new ModuleImporter(target, null).importFrom(new StringReader(csv));
+
+        assertEquals(2, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals("Zeile 4: Modulnummer muss mindestens 4 Zeichen haben", report.getErrors().get(0));
+        assertEquals("Zeile 5: Ungültige Zahl", report.getErrors().get(1));
+        assertNull(report.getFailure());
+
+        Module cloud = target.saved.get(1);
+        assertEquals("m346", cloud.getModulnummer());
+        assertEquals("Cloud; Lösungen", cloud.getModultitel());
+        assertEquals(4.5, cloud.getNote2(), 0.0);
+        assertNull(target.saved.get(0).getNote2());
+    }
+
+    @Test
+    public void importFrom_readsJsonInBatchesWithBlockIds() {
+        RecordingTarget target = new RecordingTarget();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            json.append(i > 0 ? "," : "")
+                    .append("{\"id\":7,\"modulnummer\":\"m10").append(i)
+                    .append("\",\"modultitel\":\"Modul ").append(i).append("\",\"note1\":5.0}");
+        }
+        json.append(']');
+        List<Integer> progress = new ArrayList<>();
+
+        ModuleImporter.Report report = new ModuleImporter(target, (imported, rejected) -> progress.add(imported), 2)
+                .importFrom(new StringReader(json.toString()));
+
+        assertEquals(5, report.getImported());
+        assertEquals(3, target.batches);
+        assertEquals(List.of(2, 4, 5), progress);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Long.valueOf(100 + i), target.saved.get(i).getId());
+        }
+    }
+
+    @Test
+    public void importFrom_savesRowsReadBeforeReadError() {
+        RecordingTarget target = new RecordingTarget();
+        Reader broken = new StringReader("m335;Mobile-Applikationen;5;\nm346;Cloud-Lösungen;;\nm164;Datenbanken;4;\n") {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read == -1) {
+                    throw new IOException("Verbindung unterbrochen");
+                }
+                return read;
+            }
+        };
+
+        ModuleImporter.Report report = new ModuleImporter(target, null, 2).importFrom(broken);
+
+        assertNotNull(report.getFailure());
+        assertEquals(3, report.getImported());
+        assertEquals(3, target.saved.size());
+    }
+
+    /**
+     * target that hands out ids from 100 and keeps everything saved.
+     */
+    private static class RecordingTarget implements ModuleImporter.Target {
+
+        final List<Module> saved = new ArrayList<>();
+        long nextId = 100;
+        int batches;
+
+        @Override
+        public long allocateIds(int count) {
+            long first = nextId;
+            nextId += count;
+            return first;
+        }
+
+        @Override
+        public boolean saveBatch(List<Module> batch) {
+            batches++;
+            saved.addAll(batch);
+            return true;
+        }
+    }
+}
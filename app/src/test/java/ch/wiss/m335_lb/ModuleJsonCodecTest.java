@@ -0,0 +1,71 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the streaming module json codec.
+ */
+public class ModuleJsonCodecTest {
+
+    @Test
+    public void roundTrip_keepsAllFields() throws IOException {
+        Module module = new Module(7L, "m335", "Mobile \"Apps\" \\ Übung\n", 4.5, null);
+
+        StringWriter out = new StringWriter();
+        ModuleJsonCodec.write(out, module);
+
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(out.toString()));
+        assertEquals(module, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void read_keepsIdsAbove2Pow53() throws IOException {
+        String json = "[{\"id\":9007199254740993},{\"id\":9223372036854775807},{\"id\":7.0}]";
+
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(json));
+        assertEquals(Long.valueOf((1L << 53) + 1), reader.next().getId());
+        assertEquals(Long.valueOf(Long.MAX_VALUE), reader.next().getId());
+        assertEquals(Long.valueOf(7), reader.next().getId());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void read_legacyPrefsBlob() throws IOException {
+        String blob = "[{\"id\":1,\"modulnummer\":\"m335\",\"modultitel\":\"Mobile-Applikationen\",\"note1\":5,\"note2\":5.5},"
+                + "{\"id\":2,\"modulnummer\":\"m\\u00fc01\",\"modultitel\":\"Test\\/Modul\",\"extra\":{\"a\":[1,true,null]}}]";
+
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(blob));
+        assertEquals(new Module(1L, "m335", "Mobile-Applikationen", 5.0, 5.5), reader.next());
+        assertEquals(new Module(2L, "mü01", "Test/Modul", null, null), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void lineDelimited_skipsTornRecord() throws IOException {
+        String log = "{\"op\":\"u\",\"id\":1,\"modulnummer\":\"m100\",\"modultitel\":\"Erstes\"}\n"
+                + "{\"op\":\"u\",\"id\":2,\"modulnu\n"
+                + "{\"op\":\"d\",\"id\":1}\n";
+
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(log), true);
+        assertEquals(Long.valueOf(1), reader.next().getId());
+        assertEquals("u", reader.lastOp());
+
+        try {
+            reader.next();
+            fail("torn record should not parse");
+        } catch (IOException expected) {
+            reader.skipLine();
+        }
+
+        assertEquals(Long.valueOf(1), reader.next().getId());
+        assertEquals("d", reader.lastOp());
+        assertNull(reader.next());
+    }
+}
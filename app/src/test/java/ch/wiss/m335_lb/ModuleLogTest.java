@@ -0,0 +1,244 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the module log.
+ */
+public class ModuleLogTest {
+
+    @Test
+    public void flush_writesOneEntryPerChangedModuleAndKeepsOrder() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY, 60_000);
+        File logFile = new File(directory, "modules.log");
+
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, null));
+        log.upsert(new Module(2L, "m346", "Cloud-Lösungen", null, null));
+        for (int i = 0; i < 10; i++) {
+            log.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 1.0 + i / 2.0));
+        }
+        log.upsert(new Module(3L, "m164", "Datenbanken", null, null));
+        log.delete(3L);
+        log.flush();
+
+        assertEquals(3, Files.readAllLines(logFile.toPath()).size());
+
+        // deleted and added again, the module has to move to the end after a restart as well
+        log.delete(1L);
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", 5.0, 5.0));
+        log.flush();
+
+        List<Module> reopened = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY).getAll();
+        assertEquals(log.getAll(), reopened);
+        assertEquals(Long.valueOf(1), reopened.get(1).getId());
+    }
+
+    @Test
+    public void open_salvagesIntactRecordsOfDamagedFiles() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        List<Module> modules = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            modules.add(new Module(id, "m" + (100 + id), "Modul " + id, 4.5, 5.0));
+        }
+        log.resetTo(modules);
+        log.upsert(new Module(51L, "m151", "Modul 51", 6.0, 6.0));
+        log.upsert(new Module(52L, "m152", "Modul 52", 6.0, 6.0));
+
+        File snapshot = new File(directory, "modules.snapshot.bin");
+        flipByte(snapshot, snapshot.length() / 2);
+        File logFile = new File(directory, "modules.log");
+        flipByte(logFile, 20);
+
+        ModuleLog reopened = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        // one record of the snapshot and the first log entry are lost, everything else is salvaged
+        assertEquals(50, reopened.size());
+        assertNull(reopened.findById(51L));
+        assertNotNull(reopened.findById(52L));
+        assertEquals((49 * 4.75 + 6.0) / 50, reopened.getOverallAverage(), 1e-9);
+        assertTrue(new File(directory, "modules.snapshot.bin.damaged").exists());
+
+        // the salvaged state was written as a fresh snapshot
+        assertEquals(reopened.getAll(), new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY).getAll());
+    }
+
+    @Test
+    public void getStatistics_followsChangesAndIsSharedPerVersion() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0));
+        log.upsert(new Module(2L, "m346", "Cloud-Lösungen", 5.0, 6.0));
+        log.upsert(new Module(3L, "m164", "Datenbanken", 3.0, 4.0));
+        log.upsert(new Module(2L, "m346", "Cloud-Lösungen", 6.0, 6.0));
+        log.delete(3L);
+
+        ModuleStatistics statistics = log.getStatistics();
+        assertSame(statistics, log.getStatistics());
+        assertEquals(2, statistics.getCount());
+        assertEquals(4.5, statistics.getMin(), 1e-9);
+        assertEquals(6.0, statistics.getMax(), 1e-9);
+
+        log.upsert(new Module(4L, "m165", "NoSQL", 2.0, 3.0));
+        assertEquals(2, statistics.getCount());
+        assertEquals(3, log.getStatistics().getCount());
+        log.close();
+
+        // the log entries are replayed in one bulk update
+        ModuleStatistics reopened = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY).getStatistics();
+        assertEquals(3, reopened.getCount());
+        assertEquals(4.5, reopened.getMedian(), 1e-9);
+    }
+
+    @Test
+    public void query_sortsSearchHitsAndGradeRangeLikeTheFullOrder() throws IOException {
+        ModuleLog log = new ModuleLog(Files.createTempDirectory("modulelog").toFile());
+        List<Module> modules = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            Double note1 = id % 7 == 0 ? null : 1.0 + id % 11 * 0.5;
+            Double note2 = id % 5 == 0 ? null : 6.0 - id % 9 * 0.5;
+            String title = (id % 4 == 0 ? "Datenbanken " : "Modul ") + id;
+            modules.add(new Module(id, "m" + (100 + id * 37 % 200), title, note1, note2));
+        }
+        log.resetTo(modules);
+
+        for (ModuleSortIndex.SortOrder order : ModuleSortIndex.SortOrder.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                ModuleListQuery all = ModuleListQuery.ALL.withSortOrder(order, descending);
+                long[] full = log.query(all).ids();
+                assertEquals(300, full.length);
+
+                ModuleListQuery search = all.withSearchText("daten");
+                assertArrayEquals(order + " " + descending, filter(log, full, "Datenbanken", Double.NaN, Double.NaN),
+                        log.query(search).ids());
+                ModuleListQuery range = all.withGradeRange(3.0, 4.5);
+                assertArrayEquals(order + " " + descending, filter(log, full, null, 3.0, 4.5),
+                        log.query(range).ids());
+                assertArrayEquals(order + " " + descending, filter(log, full, "Datenbanken", 3.0, 4.5),
+                        log.query(search.withGradeRange(3.0, 4.5)).ids());
+                assertArrayEquals(filter(log, full, null, 5.0, Double.NaN),
+                        log.query(all.withGradeRange(5.0, Double.NaN)).ids());
+            }
+        }
+    }
+
+    /**
+     * keeps the ids of a full list whose title contains the given word and whose average lies in the range.
+     */
+    private static long[] filter(ModuleLog log, long[] ids, String titleWord, double minGrade, double maxGrade) {
+        ModuleListQuery range = ModuleListQuery.ALL.withGradeRange(minGrade, maxGrade);
+        return Arrays.stream(ids)
+                .filter(id -> {
+                    Module module = log.findById(id);
+                    double average = module.hasCompleteGrades() ? module.getAverageGrade() : Double.NaN;
+                    return (titleWord == null || module.getModultitel().contains(titleWord))
+                            && range.matchesGrade(average);
+                })
+                .toArray();
+    }
+
+    @Test
+    public void changeListener_receivesChangedIds() throws IOException {
+        ModuleLog log = new ModuleLog(Files.createTempDirectory("modulelog").toFile());
+        List<long[]> changes = new ArrayList<>();
+        log.setChangeListener(changes::add);
+
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", null, null));
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", null, null));
+        log.replaceAll(List.of(new Module(2L, "m346", "Cloud-Lösungen", null, null)));
+        log.resetTo(List.of());
+
+        assertEquals(3, changes.size());
+        assertArrayEquals(new long[]{1}, changes.get(0));
+        assertArrayEquals(new long[]{1, 2}, changes.get(1));
+        assertNull(changes.get(2));
+    }
+
+    @Test
+    public void upsertAll_failedBatchDoesNotCostTheNextOne() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", null, null));
+        log.close();
+
+        // a directory in place of the log file makes every write of the batch fail
+        log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        File logFile = new File(directory, "modules.log");
+        assertTrue(logFile.delete() && logFile.mkdir());
+        assertFalse(log.upsertAll(List.of(new Module(2L, "m346", "Cloud-Lösungen", null, null))));
+        assertNull(log.findById(2L));
+
+        assertTrue(log.upsertAll(List.of(new Module(3L, "m164", "Datenbanken", 4.0, 5.0),
+                new Module(4L, "m165", "NoSQL", null, null))));
+        log.close();
+
+        ModuleLog reopened = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        assertEquals(3, reopened.size());
+        assertNull(reopened.findById(2L));
+        assertNotNull(reopened.findById(3L));
+        assertNotNull(reopened.findById(4L));
+    }
+
+    @Test
+    public void resetTo_keepsPreviousStateIfSnapshotFails() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY, 60_000);
+        log.upsert(new Module(1L, "m335", "Mobile-Applikationen", null, null));
+
+        // a directory in place of the temporary snapshot file makes the snapshot fail
+        assertTrue(new File(directory, "modules.snapshot.tmp").mkdir());
+        assertFalse(log.resetTo(List.of(new Module(2L, "m346", "Cloud-Lösungen", null, null))));
+        assertNotNull(log.findById(1L));
+        assertNull(log.findById(2L));
+        log.close();
+
+        // the held back upsert was written to the log before the snapshot was tried
+        assertNotNull(new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY).findById(1L));
+    }
+
+    @Test
+    public void open_appliesCommittedBatchAfterEntriesOfAnAbortedOne() throws IOException {
+        File directory = Files.createTempDirectory("modulelog").toFile();
+        try (ChecksummedLines.LineWriter writer =
+                     new ChecksummedLines.LineWriter(new FileOutputStream(new File(directory, "modules.log")))) {
+            // two entries of a batch that failed before its commit, then a committed batch of three
+            for (long id = 1; id <= 5; id++) {
+                writer.write(entry(new Module(id, "m" + (100 + id), "Modul " + id, null, null), "bu"));
+            }
+            writer.write(entry(new Module(3L, null, null, null, null), "c"));
+        }
+
+        ModuleLog log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        assertEquals(3, log.size());
+        assertNull(log.findById(2L));
+        assertNotNull(log.findById(3L));
+        assertNotNull(log.findById(5L));
+    }
+
+    private static String entry(Module module, String op) throws IOException {
+        StringWriter text = new StringWriter();
+        ModuleJsonCodec.write(text, module, op);
+        return text.toString();
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x40);
+        }
+    }
+}
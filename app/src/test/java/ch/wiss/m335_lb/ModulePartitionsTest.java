@@ -0,0 +1,70 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the partition catalog.
+ */
+public class ModulePartitionsTest {
+
+    @Test
+    public void catalog_keepsActivePartitionAndSavedSummaries() throws IOException {
+        File directory = Files.createTempDirectory("partitions").toFile();
+        ModulePartitions partitions = new ModulePartitions(directory);
+        assertEquals(ModulePartitions.DEFAULT_ID, partitions.getActiveId());
+        assertEquals(directory, partitions.getDirectory(ModulePartitions.DEFAULT_ID));
+
+        ModulePartitions.Partition semester = partitions.add("HS24");
+        partitions.setActive(semester.getId());
+        partitions.updateSummary(ModulePartitions.DEFAULT_ID, 3, 9.0, 2, 12);
+        partitions.updateSummary(semester.getId(), 2, 5.0, 1, 40);
+
+        // summaries are only written on save
+        assertEquals(0, new ModulePartitions(directory).get(semester.getId()).getModuleCount());
+        assertTrue(partitions.save());
+
+        ModulePartitions reopened = new ModulePartitions(directory);
+        List<ModulePartitions.Partition> all = reopened.getAll();
+        assertEquals(2, all.size());
+        assertEquals("HS24", reopened.getActive().getName());
+        assertEquals(4.5, all.get(0).getAverage(), 1e-9);
+        assertEquals(5, ModulePartitions.getTotalCount(all));
+        assertEquals(14.0 / 3, ModulePartitions.getTotalAverage(all), 1e-9);
+        assertEquals(40, ModulePartitions.getMaxId(all));
+        assertEquals(new File(new File(directory, "partitions"), "1"), reopened.getDirectory(semester.getId()));
+    }
+
+    @Test
+    public void catalog_isRebuiltFromBackupAndDirectoriesIfDamaged() throws IOException {
+        File directory = Files.createTempDirectory("partitions").toFile();
+        ModulePartitions partitions = new ModulePartitions(directory);
+        long fs25 = partitions.add("FS25").getId();
+        partitions.setActive(fs25);
+        partitions.updateSummary(fs25, 2, 9.0, 2, 30);
+        assertTrue(partitions.save());
+
+        // reading the catalog keeps it as backup, the next partition is only in the new catalog
+        partitions = new ModulePartitions(directory);
+        long hs25 = partitions.add("HS25").getId();
+        assertTrue(partitions.getDirectory(hs25).mkdirs());
+        Files.write(new File(directory, "partitions.bin").toPath(), new byte[]{1, 2, 3});
+
+        ModulePartitions reopened = new ModulePartitions(directory);
+        List<ModulePartitions.Partition> all = reopened.getAll();
+        assertEquals(3, all.size());
+        assertEquals(fs25, reopened.getActiveId());
+        assertEquals(4.5, reopened.get(fs25).getAverage(), 1e-9);
+        assertEquals(30, ModulePartitions.getMaxId(all));
+        assertEquals("Semester " + hs25, reopened.get(hs25).getName());
+
+        // the rebuilt catalog was written
+        assertEquals(3, new ModulePartitions(directory).getAll().size());
+    }
+}
@@ -0,0 +1,59 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the module preview.
+ */
+public class ModulePreviewTest {
+
+    @Test
+    public void write_readsBackFirstRowsAndAverage() throws IOException {
+        File directory = Files.createTempDirectory("modulepreview").toFile();
+        ModuleLog log = new ModuleLog(directory);
+        List<Module> modules = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            modules.add(new Module(id, "m" + (100 + id), "Modul " + id, id % 2 == 0 ? 5.0 : 4.0, 4.0));
+        }
+        log.resetTo(modules);
+
+        File file = new File(directory, "modules.preview.bin");
+        ModulePreview.create(log.getSnapshot()).write(file);
+        ModulePreview preview = ModulePreview.read(file);
+
+        assertEquals(modules.subList(0, ModulePreview.ROW_COUNT), preview.getModules());
+        assertEquals(log.getOverallAverage(), preview.getOverallAverage());
+        assertTrue(preview.matches(log.getIdList(), log.getOverallAverage()));
+
+        log.upsert(new Module(3L, "m103", "Modul 3", 6.0, 6.0));
+        assertFalse(preview.matches(log.getIdList(), log.getOverallAverage()));
+    }
+
+    @Test
+    public void read_ignoresMissingAndDamagedFiles() throws IOException {
+        File directory = Files.createTempDirectory("modulepreview").toFile();
+        File file = new File(directory, "modules.preview.bin");
+        assertNull(ModulePreview.read(file));
+
+        new ModulePreview(List.of(new Module(1L, "m335", "Mobile-Applikationen", null, null)), null).write(file);
+        ModulePreview empty = ModulePreview.read(file);
+        assertNull(empty.getOverallAverage());
+        assertTrue(empty.matches(new ModuleIdList(new long[]{1}, new long[]{empty.getModules().get(0).getContentHash()}), null));
+        assertFalse(empty.matches(ModuleIdList.EMPTY, null));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 6);
+            raf.write(raf.read() ^ 0x40);
+        }
+        assertNull(ModulePreview.read(file));
+    }
+}
@@ -0,0 +1,45 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for copying the modules between backends.
+ */
+public class ModuleRepositoryTest {
+
+    @Test
+    public void migrate_copiesModulesAndKeepsSource() throws IOException {
+        File sourceDirectory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog source = new ModuleLog(sourceDirectory, ModuleLog.SnapshotFormat.BINARY);
+        source.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0));
+        source.upsert(new Module(2L, "m346", "Cloud-Lösungen", null, null));
+        ModuleLog target = new ModuleLog(Files.createTempDirectory("modulelog").toFile());
+        target.upsert(new Module(7L, "m164", "Datenbanken", null, null));
+
+        assertSame(target, ModuleRepository.migrate(source, target));
+        assertEquals(source.getAll(), target.getAll());
+        // the source was closed and its files are unchanged
+        assertEquals(2, new ModuleLog(sourceDirectory, ModuleLog.SnapshotFormat.BINARY).size());
+    }
+
+    @Test
+    public void migrate_keepsSourceIfTargetCannotBeWritten() throws IOException {
+        ModuleLog source = new ModuleLog(Files.createTempDirectory("modulelog").toFile());
+        source.upsert(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0));
+        File targetDirectory = Files.createTempDirectory("modulelog").toFile();
+        ModuleLog target = new ModuleLog(targetDirectory, ModuleLog.SnapshotFormat.BINARY);
+        // a directory in place of the temporary snapshot file makes the copy fail
+        assertTrue(new File(targetDirectory, "modules.snapshot.tmp").mkdir());
+
+        assertSame(source, ModuleRepository.migrate(source, target));
+        assertEquals(List.of(new Module(1L, "m335", "Mobile-Applikationen", 4.0, 5.0)), source.getAll());
+        assertTrue(target.isEmpty());
+    }
+}
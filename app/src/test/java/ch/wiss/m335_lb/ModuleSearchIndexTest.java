@@ -0,0 +1,38 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the module search index.
+ */
+public class ModuleSearchIndexTest {
+
+    @Test
+    public void search_matchesNumberPrefixAndFoldedTitleWords() {
+        ModuleSearchIndex index = new ModuleSearchIndex();
+        index.add(1, "M335", "Mobile-Applikationen realisieren");
+        index.add(2, "m114", "Codierungs-, Kompressions- und Verschlüsselungsverfahren einsetzen");
+        index.add(3, "m346", "Cloud Lösungen konzipieren und realisieren");
+
+        assertArrayEquals(new long[]{1, 3}, index.search("m3"));
+        assertArrayEquals(new long[]{2}, index.search("VERSCHLUSS"));
+        assertArrayEquals(new long[]{3}, index.search("lösung real"));
+        assertArrayEquals(new long[]{3}, index.search("losung"));
+        assertArrayEquals(new long[0], index.search("m335 cloud"));
+        assertNull(index.search("  - "));
+    }
+
+    @Test
+    public void remove_dropsOldWords() {
+        ModuleSearchIndex index = new ModuleSearchIndex();
+        index.add(1, "m335", "Alter Titel");
+        index.remove(1, "m335", "Alter Titel");
+        index.add(1, "m335", "Neuer Titel");
+
+        assertArrayEquals(new long[0], index.search("alter"));
+        assertArrayEquals(new long[]{1}, index.search("neu"));
+        assertEquals("strasse", ModuleSearchIndex.fold("Straße"));
+    }
+}
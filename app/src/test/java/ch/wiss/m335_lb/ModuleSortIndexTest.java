@@ -0,0 +1,52 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the maintained sort orders.
+ */
+public class ModuleSortIndexTest {
+
+    @Test
+    public void numberOrder_comparesDigitsByValue() {
+        ModuleTable table = new ModuleTable();
+        ModuleSortIndex index = new ModuleSortIndex(table);
+        table.put(new Module(1L, "M335", "a", null, null));
+        table.put(new Module(2L, "m99", "b", null, null));
+        table.put(new Module(3L, "m100", "c", null, null));
+
+        long[] ids = index.getIds(ModuleSortIndex.SortOrder.NUMBER);
+        assertArrayEquals(new long[]{2, 3, 1}, Arrays.copyOf(ids, table.size()));
+    }
+
+    @Test
+    public void incrementalUpdates_matchRebuiltOrder() {
+        ModuleTable table = new ModuleTable();
+        ModuleSortIndex index = new ModuleSortIndex(table);
+        for (long id = 1; id <= 50; id++) {
+            table.put(new Module(id, "m" + id % 7, "Titel " + id % 5, id % 3 == 0 ? null : 1.0 + id % 11 * 0.5, 4.0));
+        }
+        index.getIds(ModuleSortIndex.SortOrder.AVERAGE);
+
+        for (long id = 1; id <= 50; id += 4) {
+            int row = table.indexOf(id);
+            index.remove(row);
+            index.add(table.put(new Module(id, "m" + id, "Neu", 6.0, id % 2 == 0 ? null : 5.0)));
+        }
+        index.remove(table.indexOf(10));
+        table.remove(10);
+
+        long[] incremental = Arrays.copyOf(index.getIds(ModuleSortIndex.SortOrder.AVERAGE), table.size());
+        int ranked = index.getRankedCount(ModuleSortIndex.SortOrder.AVERAGE);
+        index.invalidate();
+        long[] rebuilt = Arrays.copyOf(index.getIds(ModuleSortIndex.SortOrder.AVERAGE), table.size());
+
+        assertArrayEquals(rebuilt, incremental);
+        assertEquals(ranked, index.getRankedCount(ModuleSortIndex.SortOrder.AVERAGE));
+        assertTrue(ranked < table.size());
+    }
+}
@@ -0,0 +1,69 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the incremental grade statistics.
+ */
+public class ModuleStatisticsTest {
+
+    @Test
+    public void percentilesAndHistogram() {
+        ModuleStatistics statistics = new ModuleStatistics();
+        statistics.add("m114", 4.0);
+        statistics.add("m335", 5.0);
+        statistics.add("m346", 6.0);
+        statistics.add("m122", 3.5);
+
+        assertEquals(4, statistics.getCount());
+        assertEquals(3.5, statistics.getMin(), 1e-9);
+        assertEquals(6.0, statistics.getMax(), 1e-9);
+        assertEquals(4.5, statistics.getMedian(), 1e-9);
+        assertEquals(3.65, statistics.getPercentile(10), 1e-9);
+
+        int[] histogram = statistics.getHistogram();
+        assertEquals(1, histogram[5]); // 3.5 - 4.0
+        assertEquals(1, histogram[6]); // 4.0 - 4.5
+        assertEquals(1, histogram[8]); // 5.0 - 5.5
+        assertEquals(1, histogram[ModuleStatistics.BUCKET_COUNT - 1]); // 6.0 belongs to the last bucket
+
+        Map<String, Double> byPrefix = statistics.getAveragesByPrefix();
+        assertEquals(3.75, byPrefix.get("m1"), 1e-9);
+        assertEquals(5.5, byPrefix.get("m3"), 1e-9);
+    }
+
+    @Test
+    public void removeDuringBulkUpdate_matchesIncrementalRemove() {
+        ModuleStatistics bulk = new ModuleStatistics();
+        ModuleStatistics incremental = new ModuleStatistics();
+        bulk.beginBulkUpdate();
+        for (int i = 0; i < 100; i++) {
+            double average = 1.0 + (i * 7 % 11) * 0.5;
+            bulk.add("m" + i, average);
+            incremental.add("m" + i, average);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            double average = 1.0 + (i * 7 % 11) * 0.5;
+            bulk.remove("m" + i, average);
+            incremental.remove("m" + i, average);
+        }
+
+        assertEquals(incremental.getCount(), bulk.getCount());
+        assertEquals(incremental.getMean(), bulk.getMean(), 1e-9);
+        assertEquals(incremental.getPercentile(90), bulk.getPercentile(90), 1e-9);
+        assertArrayEquals(incremental.getHistogram(), bulk.getHistogram());
+        assertEquals(incremental.getAveragesByPrefix(), bulk.getAveragesByPrefix());
+    }
+
+    @Test
+    public void empty_returnsNaN() {
+        ModuleStatistics statistics = new ModuleStatistics();
+        assertTrue(Double.isNaN(statistics.getMedian()));
+        assertTrue(Double.isNaN(statistics.getMin()));
+        assertTrue(statistics.getAveragesByPrefix().isEmpty());
+    }
+}
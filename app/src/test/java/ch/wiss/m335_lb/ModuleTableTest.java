@@ -0,0 +1,106 @@
+package ch.wiss.m335_lb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * local unit tests for the columnar module table.
+ */
+public class ModuleTableTest {
+
+    @Test
+    public void putAndRemove_matchLinkedHashMap() {
+        ModuleTable table = new ModuleTable();
+        Map<Long, Module> expected = new LinkedHashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5000; i++) {
+            long id = random.nextInt(400);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) != null, table.remove(id));
+            } else {
+                Double note = random.nextBoolean() ? 1.0 + random.nextInt(11) * 0.5 : null;
+                Module module = new Module(id, "m" + random.nextInt(20), "Titel " + id, note, 4.0);
+                expected.put(id, module);
+                table.put(module);
+            }
+        }
+
+        List<Module> actual = new ArrayList<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                Module module = table.toModule(row);
+                assertEquals(module.getContentHash(), table.getContentHash(row));
+                assertTrue(table.matches(row, module));
+                assertEquals(row, table.indexOf(module.getId()));
+                actual.add(module);
+            }
+        }
+        assertEquals(new ArrayList<>(expected.values()), actual);
+        assertEquals(expected.size(), table.size());
+        assertEquals(-1, table.indexOf(1000));
+
+        // "Aa" and "BB" share their String hash code, the content hash still tells them apart
+        Module first = new Module(1L, "m335", "Aa", null, null);
+        Module second = new Module(1L, "m335", "BB", null, null);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first.getContentHash(), second.getContentHash());
+    }
+
+    @Test
+    public void snapshot_keepsItsStateWhileTableChanges() {
+        ModuleTable table = new ModuleTable();
+        for (long id = 0; id < 3000; id++) {
+            table.put(new Module(id, "m" + id, "Titel " + id, 4.0, 5.0));
+        }
+        ModuleTable snapshot = table.snapshot();
+        List<Module> expected = modules(snapshot);
+
+        // changes, appends, deletes with compaction and a clear all have to leave the snapshot untouched
+        table.put(new Module(5L, "m5", "Geändert", 6.0, 6.0));
+        table.put(new Module(5000L, "m5000", "Neu", null, null));
+        for (long id = 0; id < 2500; id++) {
+            table.remove(id);
+        }
+        ModuleTable second = table.snapshot();
+        assertEquals(501, second.size());
+        assertEquals(-1, second.indexOf(5));
+        table.clear();
+
+        assertEquals(expected, modules(snapshot));
+        assertEquals(2999, snapshot.indexOf(2999));
+        assertEquals(-1, snapshot.indexOf(5000));
+        assertEquals(501, modules(second).size());
+        assertEquals(Long.valueOf(5000), modules(second).get(500).getId());
+        assertThrows(IllegalStateException.class, () -> snapshot.remove(1));
+    }
+
+    private static List<Module> modules(ModuleTable table) {
+        List<Module> modules = new ArrayList<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.isLive(row)) {
+                modules.add(table.toModule(row));
+            }
+        }
+        return modules;
+    }
+
+    @Test
+    public void missingGrades_areNaNInRowView() {
+        ModuleTable table = new ModuleTable();
+        int row = table.put(new Module(1L, "m335", "Mobile-Applikationen", 5.0, null));
+
+        ModuleTable.Row view = table.newRow().moveTo(row);
+        assertTrue(Double.isNaN(table.getNote2(row)));
+        assertFalse(view.hasCompleteGrades());
+        assertTrue(view.hasAnyGrade());
+        assertNull(table.toModule(row).getNote2());
+    }
+}
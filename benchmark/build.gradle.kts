@@ -0,0 +1,42 @@
+// jmh benchmarks of the storage engine, run with ./gradlew :benchmark:jmh
+// results are written to build/results/jmh/results.json, including allocations per operation
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+sourceSets {
+    main {
+        java {
+            // the storage engine of the app is plain java, only the classes using android are left out
+            setSrcDirs(listOf("../app/src/main/java"))
+            exclude(
+                "**/AddEditModuleActivity.java",
+                "**/AsyncModuleStorage.java",
+                "**/MainActivity.java",
+                "**/ModuleAdapter.java",
+                "**/ModulePager.java",
+                "**/ModuleRepository.java",
+                "**/ModuleStorage.java",
+                "**/SqliteModuleStore.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    // gc.alloc.rate.norm in the results is the number of bytes allocated per operation
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    jvmArgs.add("-Xmx4g")
+}
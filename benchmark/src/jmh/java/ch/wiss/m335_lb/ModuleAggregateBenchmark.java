@@ -0,0 +1,90 @@
+package ch.wiss.m335_lb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * overall average and grade statistics: recomputed from the module list like
+ * {@code MainActivity.updateOverallAverage} used to, read from the maintained aggregate,
+ * and the cost of keeping the aggregate up to date on a change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ModuleAggregateBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    private File directory;
+    private ModuleLog log;
+    private List<Module> modules;
+    private ModuleTable table;
+    private Module changed;
+
+    @Setup
+    public void setUp() throws IOException {
+        modules = SyntheticModules.create(size);
+        directory = SyntheticModules.createDirectory();
+        // written behind, so the upsert benchmark measures the in-memory work and not the disk
+        log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY, 60_000);
+        log.resetTo(modules);
+
+        ModuleTable writable = new ModuleTable(size);
+        for (Module module : modules) {
+            writable.put(module);
+        }
+        table = writable.snapshot();
+        // complete grades, so every change moves the aggregate
+        changed = new Module(modules.get(size / 2));
+        changed.setNote2(5.0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.flush();
+        SyntheticModules.delete(directory);
+    }
+
+    @Benchmark
+    public double streamAverage() {
+        List<Module> modulesWithGrades = modules.stream()
+                .filter(Module::hasCompleteGrades)
+                .collect(Collectors.toList());
+        return modulesWithGrades.stream()
+                .mapToDouble(Module::getDurchschnittsnote)
+                .average()
+                .orElse(0.0);
+    }
+
+    @Benchmark
+    public Double maintainedAverage() {
+        return log.getOverallAverage();
+    }
+
+    @Benchmark
+    public ModuleStatistics statistics() {
+        // a new snapshot per call, each snapshot builds its statistics once
+        return new ModuleSnapshot(0, table, 0, 0).getStatistics();
+    }
+
+    @Benchmark
+    public Double upsertAndAverage() {
+        changed.setNote1(changed.getNote1() == null || changed.getNote1() < 6.0 ? 6.0 : 4.0);
+        log.upsert(changed);
+        return log.getOverallAverage();
+    }
+}
@@ -0,0 +1,65 @@
+package ch.wiss.m335_lb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * json round trip of the whole module list, as the old SharedPreferences blob and the json snapshot use it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModuleJsonCodecBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    private List<Module> modules;
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        modules = SyntheticModules.create(size);
+        json = write(modules);
+    }
+
+    @Benchmark
+    public String write() throws IOException {
+        return write(modules);
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        ModuleJsonCodec.ModuleReader reader = new ModuleJsonCodec.ModuleReader(new StringReader(json));
+        Module module;
+        while ((module = reader.next()) != null) {
+            blackhole.consume(module);
+        }
+    }
+
+    private static String write(List<Module> modules) throws IOException {
+        StringWriter out = new StringWriter();
+        out.write('[');
+        for (int i = 0; i < modules.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            ModuleJsonCodec.write(out, modules.get(i));
+        }
+        out.write(']');
+        return out.toString();
+    }
+}
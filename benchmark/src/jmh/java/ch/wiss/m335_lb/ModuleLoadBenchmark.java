@@ -0,0 +1,48 @@
+package ch.wiss.m335_lb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * time to open the store on app start: reading the snapshot and building table, indexes and aggregate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModuleLoadBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"BINARY", "JSON"})
+    public ModuleLog.SnapshotFormat format;
+
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = SyntheticModules.createDirectory();
+        new ModuleLog(directory, format).resetTo(SyntheticModules.create(size));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticModules.delete(directory);
+    }
+
+    @Benchmark
+    public ModuleLog open() {
+        return new ModuleLog(directory, format);
+    }
+}
@@ -0,0 +1,88 @@
+package ch.wiss.m335_lb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id lookups: single modules for the edit screen and pages of the list, compared with the linear
+ * search over a module list the app used before the table was indexed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ModuleLookupBenchmark {
+
+    private static final int PROBES = 1024;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    private File directory;
+    private ModuleLog log;
+    private List<Module> modules;
+    // existing and missing ids in random order
+    private long[] probeIds;
+    private long[] pageIds;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        modules = SyntheticModules.create(size);
+        directory = SyntheticModules.createDirectory();
+        log = new ModuleLog(directory, ModuleLog.SnapshotFormat.BINARY);
+        log.resetTo(modules);
+
+        Random random = new Random(7);
+        probeIds = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probeIds[i] = 1 + random.nextInt(size + size / 10 + 1);
+        }
+        pageIds = log.getIdList().ids();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticModules.delete(directory);
+    }
+
+    @Benchmark
+    public Module findById() {
+        return log.findById(nextProbe());
+    }
+
+    @Benchmark
+    public List<Module> findPage() {
+        int from = (int) (nextProbe() % Math.max(1, pageIds.length - PAGE_SIZE));
+        return log.findByIds(pageIds, from, Math.min(pageIds.length, from + PAGE_SIZE));
+    }
+
+    @Benchmark
+    public Module findByIdInList() {
+        long id = nextProbe();
+        for (Module module : modules) {
+            if (module.getId() == id) {
+                return module;
+            }
+        }
+        return null;
+    }
+
+    private long nextProbe() {
+        next = (next + 1) & (PROBES - 1);
+        return probeIds[next];
+    }
+}
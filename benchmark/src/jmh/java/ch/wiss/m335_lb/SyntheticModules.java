@@ -0,0 +1,65 @@
+package ch.wiss.m335_lb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * reproducible module data for the benchmarks.
+ */
+final class SyntheticModules {
+
+    private static final String[] TITLES = {
+            "Mobile-Applikationen", "Cloud-Lösungen", "Datenbanken", "Web-Applikationen", "Netzwerke",
+            "Software-Testing", "Projektmanagement", "IT-Sicherheit"
+    };
+
+    private SyntheticModules() {
+    }
+
+    /**
+     * creates modules with ids 1 to {@code count}. about a fifth of the grades is missing,
+     * like in a catalog of modules still in progress.
+     *
+     * @param count number of modules
+     * @return new modules, the same for every call with the same count
+     */
+    static List<Module> create(int count) {
+        Random random = new Random(42);
+        List<Module> modules = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            Double note1 = random.nextInt(5) == 0 ? null : grade(random);
+            Double note2 = random.nextInt(5) == 0 ? null : grade(random);
+            modules.add(new Module(id, "m" + (100 + random.nextInt(900)),
+                    TITLES[random.nextInt(TITLES.length)] + " " + id, note1, note2));
+        }
+        return modules;
+    }
+
+    /**
+     * @return a new empty temp directory for the files of a log
+     */
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("modulebench").toFile();
+    }
+
+    /**
+     * deletes a directory created for a benchmark together with its files.
+     */
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static double grade(Random random) {
+        return 1.0 + random.nextInt(11) * 0.5;
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "m335-lb"
 include(":app")
+include(":benchmark")